@@ -0,0 +1,71 @@
+package io.github.soniex2.libtransfer.benchmark;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+/**
+ * A simple type id + count element, shaped like the demo element.
+ *
+ * @author soniex2
+ */
+public final class BenchElement implements SizedElement<BenchElement> {
+	public static final BenchElement EMPTY = new BenchElement();
+	public static final int MAX_COUNT = 64;
+
+	private final int type;
+	private final int count;
+
+	private BenchElement() {
+		type = -1;
+		count = 0;
+	}
+
+	private BenchElement(int type, int count) {
+		if (type < 0 || count < 1 || count > MAX_COUNT) {
+			throw new IllegalArgumentException();
+		}
+		this.type = type;
+		this.count = count;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public BenchElement withCount(int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		if (type < 0) {
+			throw new IllegalStateException();
+		}
+		return new BenchElement(type, count);
+	}
+
+	@Override
+	public boolean hasSameType(BenchElement other) {
+		return type == other.type;
+	}
+
+	@Override
+	public int getMaxCount() {
+		return isEmpty() ? Integer.MAX_VALUE : MAX_COUNT;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this == EMPTY;
+	}
+
+	public static BenchElement of(int type, int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		return new BenchElement(type, count);
+	}
+}
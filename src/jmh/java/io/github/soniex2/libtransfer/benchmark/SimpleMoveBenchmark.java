@@ -0,0 +1,87 @@
+package io.github.soniex2.libtransfer.benchmark;
+
+import io.github.soniex2.libtransfer.SizedElementFilter;
+import io.github.soniex2.libtransfer.algorithm.SimpleMove;
+import io.github.soniex2.libtransfer.impl.IndexedSizedElementHolderImpl;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SimpleMove} between two {@link SizedElementHolderImpl}s.
+ * <p>
+ * Both holders are filled with type 1 at the given fill level, and the source holder's last slot gets the moved
+ * type 0. Every invocation moves a few elements of type 0 over and back again, so both holders keep their shape and
+ * each move has to scan the whole source holder and, unless {@code fill} is 100, a few destination slots.
+ * </p>
+ *
+ * @author soniex2
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleMoveBenchmark {
+	@Param({"8", "1024", "1048576"})
+	public int slots;
+
+	@Param({"0", "50", "100"})
+	public int fill;
+
+	/**
+	 * Whether to use {@link IndexedSizedElementHolderImpl}s.
+	 */
+	@Param({"false", "true"})
+	public boolean indexed;
+
+	private SizedElementHolderImpl<BenchElement> a;
+	private SizedElementHolderImpl<BenchElement> b;
+	private SizedElementFilter<BenchElement> filter;
+	private final SimpleMove<BenchElement> move = new SimpleMove<>();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		a = newHolder();
+		b = newHolder();
+		SizedElementHolderImplBenchmark.fill(a, 1, fill);
+		SizedElementHolderImplBenchmark.fill(b, 1, fill);
+		int last = slots - 1;
+		BenchElement cur = a.get(last);
+		if (!cur.isEmpty()) {
+			a.extract(last, cur, false).commit();
+		}
+		a.insert(last, BenchElement.of(0, 8), false).commit();
+		// make room for the moved elements.
+		if (!b.get(last).isEmpty()) {
+			b.extract(last, b.get(last), false).commit();
+		}
+		BenchElement moved = BenchElement.of(0, 4);
+		filter = () -> moved;
+	}
+
+	private SizedElementHolderImpl<BenchElement> newHolder() {
+		if (indexed) {
+			return new IndexedSizedElementHolderImpl<>(slots, () -> BenchElement.EMPTY, BenchElement::getType);
+		}
+		return new SizedElementHolderImpl<>(slots, () -> BenchElement.EMPTY);
+	}
+
+	@Benchmark
+	public boolean moveThereAndBack() {
+		return move.move(a, b, filter) & move.move(b, a, filter);
+	}
+}
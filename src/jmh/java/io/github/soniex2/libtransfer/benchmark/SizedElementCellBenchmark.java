@@ -0,0 +1,88 @@
+package io.github.soniex2.libtransfer.benchmark;
+
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.impl.SizedElementCell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Benchmarks a single {@link SizedElementCell}. With more than one thread ({@code -t}), all threads hit the same cell.
+ *
+ * @author soniex2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SizedElementCellBenchmark {
+	@Param({"true", "false"})
+	public boolean strong;
+
+	/**
+	 * How full the cell starts out, in percent of {@link BenchElement#MAX_COUNT}.
+	 */
+	@Param({"0", "50", "100"})
+	public int fill;
+
+	private SizedElementCell<BenchElement> cell;
+	private BenchElement one;
+
+	@Setup
+	public void setup() {
+		cell = new SizedElementCell<>(BenchElement.EMPTY, new AtomicBoolean(true), new ReentrantReadWriteLock(true).readLock());
+		one = BenchElement.of(0, 1);
+		int count = BenchElement.MAX_COUNT * fill / 100;
+		if (count > 0) {
+			cell.insert(BenchElement.of(0, count), false).commit();
+		}
+	}
+
+	@Benchmark
+	public Transaction<BenchElement> insertRevert() {
+		Transaction<BenchElement> t = cell.insert(one, strong);
+		t.revert();
+		return t;
+	}
+
+	@Benchmark
+	public Transaction<BenchElement> extractRevert() {
+		Transaction<BenchElement> t = cell.extract(one, strong);
+		t.revert();
+		return t;
+	}
+
+	/**
+	 * Inserts and commits one element, then extracts and commits it again, so the cell's fill level stays put.
+	 */
+	@Benchmark
+	public Transaction<BenchElement> insertExtractCommit() {
+		Transaction<BenchElement> t = cell.insert(one, strong);
+		t.commit();
+		if (t.get().isEmpty()) {
+			// full cell: go the other way around.
+			t = cell.extract(one, strong);
+			t.commit();
+			t = cell.insert(t.get(), strong);
+			t.commit();
+			return t;
+		}
+		t = cell.extract(t.get(), strong);
+		t.commit();
+		return t;
+	}
+}
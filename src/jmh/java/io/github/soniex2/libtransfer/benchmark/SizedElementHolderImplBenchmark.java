@@ -0,0 +1,148 @@
+package io.github.soniex2.libtransfer.benchmark;
+
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import io.github.soniex2.libtransfer.impl.StripedReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Benchmarks {@link SizedElementHolderImpl}. Run with {@code -t} to vary the thread count; {@code contention} picks
+ * whether every thread works on slot 0 or on a slot of its own. For lock scaling, compare e.g.
+ * {@code -t 1}, {@code -t 8} and {@code -t 64} with {@code -p contention=disjoint}.
+ *
+ * @author soniex2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SizedElementHolderImplBenchmark {
+	@Param({"8", "1024", "1048576"})
+	public int slots;
+
+	/**
+	 * How full each slot starts out, in percent of {@link BenchElement#MAX_COUNT}.
+	 */
+	@Param({"0", "50", "100"})
+	public int fill;
+
+	@Param({"true", "false"})
+	public boolean strong;
+
+	@Param({"same", "disjoint"})
+	public String contention;
+
+	/**
+	 * The holder's lock: the default fair {@link ReentrantReadWriteLock}, or a {@link StripedReadWriteLock}.
+	 */
+	@Param({"fair", "striped"})
+	public String lock;
+
+	SizedElementHolderImpl<BenchElement> holder;
+	BenchElement one;
+	final AtomicInteger nextSlot = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		ReadWriteLock rwlock = "striped".equals(lock) ? new StripedReadWriteLock() : new ReentrantReadWriteLock(true);
+		holder = new SizedElementHolderImpl<>(slots, () -> BenchElement.EMPTY, rwlock);
+		one = BenchElement.of(0, 1);
+		fill(holder, 0, fill);
+		nextSlot.set(0);
+	}
+
+	static void fill(SizedElementHolderImpl<BenchElement> holder, int type, int fill) {
+		int count = BenchElement.MAX_COUNT * fill / 100;
+		if (count > 0) {
+			BenchElement element = BenchElement.of(type, count);
+			for (int i = 0; i < holder.getSlots(); i++) {
+				holder.insert(i, element, false).commit();
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class ThreadSlot {
+		int slot;
+		int cursor;
+
+		@Setup(Level.Trial)
+		public void setup(SizedElementHolderImplBenchmark bench) {
+			slot = "same".equals(bench.contention) ? 0 : bench.nextSlot.getAndIncrement() % bench.slots;
+			cursor = slot;
+		}
+	}
+
+	@Benchmark
+	public BenchElement get(ThreadSlot ts) {
+		return holder.get(ts.slot);
+	}
+
+	/**
+	 * Walks every slot in turn, starting at this thread's slot.
+	 */
+	@Benchmark
+	public BenchElement getSweep(ThreadSlot ts) {
+		int slot = ts.cursor;
+		ts.cursor = slot + 1 == slots ? 0 : slot + 1;
+		return holder.get(slot);
+	}
+
+	@Benchmark
+	public Transaction<BenchElement> insertRevert(ThreadSlot ts) {
+		Transaction<BenchElement> t = holder.insert(ts.slot, one, strong);
+		t.revert();
+		return t;
+	}
+
+	@Benchmark
+	public Transaction<BenchElement> extractRevert(ThreadSlot ts) {
+		Transaction<BenchElement> t = holder.extract(ts.slot, one, strong);
+		t.revert();
+		return t;
+	}
+
+	@Benchmark
+	public Transaction<BenchElement> extractInsertCommit(ThreadSlot ts) {
+		Transaction<BenchElement> t = holder.extract(ts.slot, one, strong);
+		t.commit();
+		if (t.get().isEmpty()) {
+			t = holder.insert(ts.slot, one, strong);
+			t.commit();
+			t = holder.extract(ts.slot, t.get(), strong);
+			t.commit();
+			return t;
+		}
+		t = holder.insert(ts.slot, t.get(), strong);
+		t.commit();
+		return t;
+	}
+
+	/**
+	 * Reserves a full stack across the whole holder as one transaction, then reverts it.
+	 */
+	@Benchmark
+	public Transaction<BenchElement> extractBulkRevert() {
+		Transaction<BenchElement> t = holder.extractBulk(0, slots, BenchElement.of(0, BenchElement.MAX_COUNT), strong);
+		t.revert();
+		return t;
+	}
+}
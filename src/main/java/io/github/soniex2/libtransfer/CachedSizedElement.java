@@ -0,0 +1,211 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A SizedElement which reuses its instances: elements of a type share a table of instances by count, so
+ * {@link #withCount(int)}, {@link #combine(SizedElement)} and {@link #split(SizedElement)} only allocate the first
+ * time they see a count.
+ * <p>
+ * Elements created with {@link #CachedSizedElement(InstanceCache, Object, int)} get their type's table from an
+ * {@link InstanceCache}, keyed by type, so every element of a type shares it, however it was created. Elements
+ * created with {@link #CachedSizedElement(CachedSizedElement, int)} share the given element's table. Elements
+ * created with {@link #CachedSizedElement(int)} start a table of their own, so instances are then only reused among
+ * the elements derived from them. Only counts up to {@link #getMaxCachedCount()} are kept. A table goes away with the
+ * last element using it, once its cache has let go of it.
+ * </p>
+ * <p>
+ * Elements sharing a table have the same type, so {@link #hasSameType(CachedSizedElement)} is then a reference
+ * comparison. Elements must be immutable.
+ * </p>
+ *
+ * @author soniex2
+ */
+public abstract class CachedSizedElement<T extends CachedSizedElement<T>> implements SizedElement<T> {
+	public static final int DEFAULT_MAX_CACHED_COUNT = 64;
+
+	private final Instances<T> instances;
+	private final int count;
+
+	/**
+	 * Construct a new CachedSizedElement with the given count, starting a new table of instances.
+	 * <p>
+	 * Elements constructed this way never share instances with each other, even if they have the same type. Use
+	 * {@link #CachedSizedElement(InstanceCache, Object, int)} for that.
+	 * </p>
+	 *
+	 * @param count The count.
+	 */
+	protected CachedSizedElement(int count) {
+		this.instances = new Instances<>();
+		this.count = count;
+	}
+
+	/**
+	 * Construct a new CachedSizedElement with the given count, sharing the table of instances of its type from the
+	 * given cache.
+	 *
+	 * @param cache The cache.
+	 * @param typeKey The element's type key, which must have the same {@code equals}/{@code hashCode} if and only if
+	 * the elements {@link #hasSameType(CachedSizedElement) have the same type}.
+	 * @param count The count.
+	 */
+	protected CachedSizedElement(InstanceCache<T> cache, Object typeKey, int count) {
+		this.instances = cache.instances(Objects.requireNonNull(typeKey));
+		this.count = count;
+	}
+
+	/**
+	 * Construct a new CachedSizedElement with the given count, sharing the given element's table of instances.
+	 *
+	 * @param sameType An element of the same type.
+	 * @param count The count.
+	 */
+	protected CachedSizedElement(T sameType, int count) {
+		this.instances = ((CachedSizedElement<T>) sameType).instances;
+		this.count = count;
+	}
+
+	/**
+	 * Create a new element of this element's type, with the given count. Usually
+	 * {@code new MyElement(this, count)}, using {@link #CachedSizedElement(CachedSizedElement, int)}.
+	 *
+	 * @param count The count, already checked against {@link #getMaxCount()}. May be {@code 0}, for which this should
+	 * usually return the shared empty element.
+	 * @return The new element.
+	 * @throws IllegalStateException If this element {@link #isEmpty()} and {@code count > 0}.
+	 */
+	protected abstract T create(int count);
+
+	/**
+	 * Retrieve whether this element has the same type as the given element, which doesn't share its table.
+	 *
+	 * @param other The element whose type to compare to.
+	 * @return Whether this element has the same type as the given element.
+	 * @see #hasSameType(CachedSizedElement)
+	 */
+	protected abstract boolean isSameType(T other);
+
+	/**
+	 * Retrieve the highest count whose instances are reused. Must be the same for elements of the same type.
+	 *
+	 * @return The highest cached count.
+	 */
+	protected int getMaxCachedCount() {
+		return DEFAULT_MAX_CACHED_COUNT;
+	}
+
+	@Override
+	public final int getCount() {
+		return count;
+	}
+
+	@Override
+	public T withCount(int count) {
+		if (count < 0 || count > getMaxCount()) {
+			throw new IllegalArgumentException("Count out of range: " + count);
+		}
+		if (count > getMaxCachedCount()) {
+			return create(count);
+		}
+		AtomicReferenceArray<T> table = instances.table.get();
+		if (table == null) {
+			// racing threads may each make one, but only one gets kept, and the others use that one.
+			table = new AtomicReferenceArray<>(Math.min(getMaxCount(), getMaxCachedCount()) + 1);
+			if (!instances.table.compareAndSet(null, table)) {
+				table = instances.table.get();
+			}
+		}
+		T instance = table.get(count);
+		if (instance == null) {
+			instance = create(count);
+			if (!table.compareAndSet(count, null, instance)) {
+				instance = table.get(count);
+			}
+		}
+		return instance;
+	}
+
+	@Override
+	public final boolean hasSameType(T other) {
+		return instances == ((CachedSizedElement<T>) other).instances || isSameType(other);
+	}
+
+	/**
+	 * The table of instances of a type, by count.
+	 */
+	private static final class Instances<T> {
+		final AtomicReference<AtomicReferenceArray<T>> table = new AtomicReference<>();
+	}
+
+	/**
+	 * A bounded map from type keys to tables of instances, usually one per element class.
+	 * <p>
+	 * Once it holds more types than its limit, it evicts arbitrary ones. Elements of an evicted type keep their
+	 * table, but elements of that type created afterwards start a new one.
+	 * </p>
+	 *
+	 * @see #CachedSizedElement(InstanceCache, Object, int)
+	 */
+	public static final class InstanceCache<T extends CachedSizedElement<T>> {
+		private final int maxTypes;
+		private final ConcurrentHashMap<Object, Instances<T>> tables = new ConcurrentHashMap<>();
+
+		/**
+		 * Construct a new, empty InstanceCache, which holds at most the given number of types.
+		 *
+		 * @param maxTypes The most types to hold.
+		 * @throws IllegalArgumentException If {@code maxTypes < 1}.
+		 */
+		public InstanceCache(int maxTypes) {
+			if (maxTypes < 1) {
+				throw new IllegalArgumentException("Must hold at least one type: " + maxTypes);
+			}
+			this.maxTypes = maxTypes;
+		}
+
+		/**
+		 * Retrieve the cached element of the given type with the given count, if there is one.
+		 * <p>
+		 * Useful for factory methods, to avoid constructing an element just to have it replaced by a cached one.
+		 * </p>
+		 *
+		 * @param typeKey The type key.
+		 * @param count The count.
+		 * @return The cached element, or {@code null} if there's none.
+		 */
+		public T get(Object typeKey, int count) {
+			Instances<T> instances = tables.get(typeKey);
+			AtomicReferenceArray<T> table = instances == null ? null : instances.table.get();
+			return table == null || count < 0 || count >= table.length() ? null : table.get(count);
+		}
+
+		/**
+		 * Retrieve how many types this cache currently holds.
+		 *
+		 * @return The number of types.
+		 */
+		public int size() {
+			return tables.size();
+		}
+
+		Instances<T> instances(Object typeKey) {
+			Instances<T> instances = tables.get(typeKey);
+			if (instances != null) {
+				return instances;
+			}
+			instances = tables.computeIfAbsent(typeKey, k -> new Instances<>());
+			// racing evictions may overshoot a little, but never leave the cache above the limit for long.
+			for (Iterator<Object> it = tables.keySet().iterator(); tables.size() > maxTypes && it.hasNext(); ) {
+				if (!it.next().equals(typeKey)) {
+					it.remove();
+				}
+			}
+			return instances;
+		}
+	}
+}
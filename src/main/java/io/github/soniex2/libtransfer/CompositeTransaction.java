@@ -0,0 +1,233 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A transaction made up of other transactions, which are committed or reverted as a unit.
+ * <p>
+ * If any part gets {@link TransactionStatus#INVALIDATED invalidated}, so does the whole, and the other parts are reverted.
+ * See {@link #commit()} for when that happens while committing.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolder#extractBulk(int[], SizedElement, boolean)
+ * @see SizedElementHolder#insertBulk(int[], SizedElement, boolean)
+ */
+public class CompositeTransaction<T extends SizedElement<T>> implements Transaction<T> {
+	private final List<Transaction<T>> parts = new ArrayList<>();
+	private final boolean concurrent;
+	private T transactionSize;
+	private TransactionStatus status = TransactionStatus.OPEN;
+
+	/**
+	 * Construct a new, empty CompositeTransaction.
+	 *
+	 * @param empty An empty element.
+	 * @param concurrent Whether the parts are concurrent.
+	 */
+	public CompositeTransaction(T empty, boolean concurrent) {
+		this.transactionSize = Objects.requireNonNull(empty);
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Add an open transaction to this CompositeTransaction.
+	 *
+	 * @param part The transaction.
+	 * @throws IllegalArgumentException If {@code part}'s element(s) can't combine with this transaction's.
+	 * @throws IllegalStateException If {@code part} or this transaction isn't open.
+	 */
+	public void add(Transaction<T> part) {
+		if (status != TransactionStatus.OPEN || part.getStatus() != TransactionStatus.OPEN) {
+			throw new IllegalStateException();
+		}
+		transactionSize = transactionSize.combine(part.get());
+		parts.add(part);
+	}
+
+	/**
+	 * Open a transaction on each of the given slots, in order, until the given element(s) are used up, and add the
+	 * non-empty ones to the given CompositeTransaction. Empty transactions are reverted right away.
+	 *
+	 * @param into The CompositeTransaction to add to.
+	 * @param slots The slots.
+	 * @param element The element(s) to move.
+	 * @param operation The operation which opens a transaction on a slot.
+	 * @param <T> The element type.
+	 * @param <C> The CompositeTransaction type.
+	 * @return {@code into}.
+	 */
+	public static <T extends SizedElement<T>, C extends CompositeTransaction<T>> C collectSlots(C into, int[] slots, T element, SlotOperation<T> operation) {
+		return collect(into, slots.length, i -> slots[i], element, operation);
+	}
+
+	/**
+	 * Open a transaction on each slot of the given range, in order, until the given element(s) are used up, and add
+	 * the non-empty ones to the given CompositeTransaction. Empty transactions are reverted right away.
+	 *
+	 * @param into The CompositeTransaction to add to.
+	 * @param fromSlot The first slot, inclusive.
+	 * @param toSlot The last slot, exclusive.
+	 * @param element The element(s) to move.
+	 * @param operation The operation which opens a transaction on a slot.
+	 * @param <T> The element type.
+	 * @param <C> The CompositeTransaction type.
+	 * @return {@code into}.
+	 */
+	public static <T extends SizedElement<T>, C extends CompositeTransaction<T>> C collectRange(C into, int fromSlot, int toSlot, T element, SlotOperation<T> operation) {
+		return collect(into, toSlot - fromSlot, i -> fromSlot + i, element, operation);
+	}
+
+	private static <T extends SizedElement<T>, C extends CompositeTransaction<T>> C collect(C into, int count, IntUnaryOperator slot, T element, SlotOperation<T> operation) {
+		T left = Objects.requireNonNull(element);
+		try {
+			for (int i = 0; i < count && !left.isEmpty(); i++) {
+				Transaction<T> transaction = operation.apply(slot.applyAsInt(i), left);
+				if (transaction.get().isEmpty()) {
+					transaction.revert();
+				} else {
+					into.add(transaction);
+					left = left.split(transaction.get());
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			into.revert();
+			throw e;
+		}
+		return into;
+	}
+
+	@Override
+	public T get() {
+		return transactionSize;
+	}
+
+	/**
+	 * Commit every part.
+	 * <p>
+	 * Every part's status is checked before any of them is committed, so if one was invalidated, none are. Weak parts
+	 * may still get invalidated while the others are being committed, unless something keeps their holders from being
+	 * invalidated meanwhile, as the bulk transactions of {@link io.github.soniex2.libtransfer.impl.SizedElementHolderImpl}
+	 * do. The other parts are then committed anyway, and this returns {@code false}: the commit is partial.
+	 * </p>
+	 *
+	 * @return Whether every part could be committed.
+	 * @throws IllegalStateException If this transaction isn't open, e.g. because a part was invalidated.
+	 */
+	@Override
+	public boolean commit() {
+		if (!getStatus().canConfirm()) {
+			throw new IllegalStateException();
+		}
+		status = TransactionStatus.CONFIRMED;
+		boolean ok = true;
+		for (Transaction<T> part : parts) {
+			try {
+				ok &= commitPart(part);
+			} catch (IllegalStateException e) {
+				// invalidated after the check above. the rest still get committed.
+				ok = false;
+			}
+		}
+		return ok;
+	}
+
+	@Override
+	public boolean revert() {
+		if (!getStatus().canRevert()) {
+			throw new IllegalStateException();
+		}
+		status = TransactionStatus.REVERTED;
+		return revertParts();
+	}
+
+	private boolean revertParts() {
+		boolean ok = true;
+		for (Transaction<T> part : parts) {
+			if (part.getStatus().canRevert()) {
+				ok &= revertPart(part);
+			}
+		}
+		return ok;
+	}
+
+	/**
+	 * Commit one part of this transaction.
+	 *
+	 * @param part The part.
+	 * @return Whether the part could be confirmed.
+	 */
+	protected boolean commitPart(Transaction<T> part) {
+		return part.commit();
+	}
+
+	/**
+	 * Revert one part of this transaction.
+	 *
+	 * @param part The part.
+	 * @return Whether the part could be reverted.
+	 */
+	protected boolean revertPart(Transaction<T> part) {
+		return part.revert();
+	}
+
+	@Override
+	public TransactionStatus getStatus() {
+		if (status == TransactionStatus.OPEN) {
+			for (Transaction<T> part : parts) {
+				if (part.getStatus() == TransactionStatus.INVALIDATED) {
+					status = TransactionStatus.INVALIDATED;
+					revertParts();
+					break;
+				}
+			}
+		}
+		return status;
+	}
+
+	@Override
+	public boolean isStrong() {
+		for (Transaction<T> part : parts) {
+			if (!part.isStrong()) {
+				return false;
+			}
+		}
+		return !parts.isEmpty();
+	}
+
+	@Override
+	public void makeStrong() {
+		for (Transaction<T> part : parts) {
+			part.makeStrong();
+		}
+	}
+
+	@Override
+	public void makeWeak() {
+		for (Transaction<T> part : parts) {
+			part.makeWeak();
+		}
+	}
+
+	@Override
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Opens a transaction on a slot.
+	 */
+	public interface SlotOperation<T extends SizedElement<T>> {
+		/**
+		 * Open a transaction on the given slot.
+		 *
+		 * @param slot The slot.
+		 * @param element The element(s) to move.
+		 * @return The transaction.
+		 */
+		Transaction<T> apply(int slot, T element);
+	}
+}
@@ -0,0 +1,40 @@
+package io.github.soniex2.libtransfer;
+
+/**
+ * A SizedElementHolder which keeps running totals of the elements it holds, by type.
+ *
+ * @author soniex2
+ */
+public interface CountingSizedElementHolder<T extends SizedElement<T>> extends SizedElementHolder<T> {
+	/**
+	 * Retrieve how many elements of the same type as the given element this holder holds, by committed contents.
+	 * <p>
+	 * In a concurrent system, the result is only a hint. Once there are no transactions in progress, it's exact.
+	 * </p>
+	 *
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type are held. {@code 0} if {@code type} is empty.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 */
+	long countOf(T type);
+
+	/**
+	 * Retrieve how many elements of the same type as the given element are reserved by open insertions.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type are pending insertion. {@code 0} if {@code type} is empty.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 * @see #countOf(SizedElement)
+	 */
+	long reservedForInsert(T type);
+
+	/**
+	 * Retrieve how many elements of the same type as the given element are reserved by open extractions.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type are pending extraction. {@code 0} if {@code type} is empty.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 * @see #countOf(SizedElement)
+	 */
+	long reservedForExtract(T type);
+}
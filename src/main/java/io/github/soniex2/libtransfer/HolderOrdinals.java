@@ -0,0 +1,26 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out holder ordinals.
+ *
+ * @author soniex2
+ * @see SizedElementHolder#getOrdinal()
+ */
+public final class HolderOrdinals {
+	// above any identity hash code, so they never collide with the default ordinals.
+	private static final AtomicLong NEXT = new AtomicLong(1L << 32);
+
+	private HolderOrdinals() {
+	}
+
+	/**
+	 * Retrieve a new, unique ordinal.
+	 *
+	 * @return The ordinal.
+	 */
+	public static long next() {
+		return NEXT.getAndIncrement();
+	}
+}
@@ -0,0 +1,34 @@
+package io.github.soniex2.libtransfer;
+
+/**
+ * A SizedElementHolder which keeps track of which slots hold which types of elements.
+ *
+ * @author soniex2
+ */
+public interface IndexedSizedElementHolder<T extends SizedElement<T>> extends SizedElementHolder<T> {
+	/**
+	 * Retrieve the slots which hold elements of the same type as the given element, in ascending order.
+	 * <p>
+	 * In a concurrent system, the result is only a hint: slots may have changed by the time the caller looks at them.
+	 * Once there are no transactions in progress, it's exact.
+	 * </p>
+	 *
+	 * @param type The element whose type to look for.
+	 * @return The slots which hold elements of the given type. Empty if {@code type} is empty.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 */
+	int[] slotsContaining(T type);
+
+	/**
+	 * Retrieve the slots which have room for the given element(s): slots partially filled with the same type, in
+	 * ascending order, followed by as many empty slots as the given element(s) would need, in ascending order.
+	 * <p>
+	 * In a concurrent system, the result is only a hint: slots may have changed by the time the caller looks at them.
+	 * </p>
+	 *
+	 * @param element The element(s) to find room for.
+	 * @return The slots which have room for the given element(s). Empty if {@code element} is empty.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 */
+	int[] slotsAccepting(T element);
+}
@@ -0,0 +1,74 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Selects which types of elements to move, and how many of each, at most.
+ *
+ * @author soniex2
+ * @see io.github.soniex2.libtransfer.algorithm.MultiMove
+ */
+public interface MultiSizedElementFilter<T extends SizedElement<T>> {
+	/**
+	 * Retrieve how many elements of the given element's type may be moved, at most.
+	 * <p>
+	 * Moves call this once per type they come across, so it may be somewhat expensive.
+	 * </p>
+	 *
+	 * @param type A non-empty element, whose count is to be ignored.
+	 * @return How many elements of the given type may be moved. {@code 0} to not move the type at all.
+	 */
+	long limit(T type);
+
+	/**
+	 * Create a filter which lets through the given element's type, up to the given element's count.
+	 *
+	 * @param filter The single-element filter.
+	 * @param <T> The element type.
+	 * @return The filter.
+	 */
+	static <T extends SizedElement<T>> MultiSizedElementFilter<T> of(SizedElementFilter<T> filter) {
+		T element = Objects.requireNonNull(filter.get());
+		return type -> !element.isEmpty() && element.hasSameType(type) ? element.getCount() : 0;
+	}
+
+	/**
+	 * Create a filter which lets through the types of the given elements, up to their counts. Elements of the same
+	 * type add up.
+	 *
+	 * @param elements The elements.
+	 * @param <T> The element type.
+	 * @return The filter.
+	 */
+	static <T extends SizedElement<T>> MultiSizedElementFilter<T> anyOf(Iterable<? extends T> elements) {
+		List<T> copy = new ArrayList<>();
+		for (T element : elements) {
+			copy.add(Objects.requireNonNull(element));
+		}
+		return type -> {
+			long limit = 0;
+			for (T element : copy) {
+				if (!element.isEmpty() && element.hasSameType(type)) {
+					limit += element.getCount();
+				}
+			}
+			return limit;
+		};
+	}
+
+	/**
+	 * Create a filter which lets through any type matching the given predicate, up to the given count per type.
+	 *
+	 * @param predicate The predicate, which is given non-empty elements.
+	 * @param limitPerType How many elements of each matching type may be moved, at most.
+	 * @param <T> The element type.
+	 * @return The filter.
+	 */
+	static <T extends SizedElement<T>> MultiSizedElementFilter<T> matching(Predicate<? super T> predicate, long limitPerType) {
+		Objects.requireNonNull(predicate);
+		return type -> predicate.test(type) ? limitPerType : 0;
+	}
+}
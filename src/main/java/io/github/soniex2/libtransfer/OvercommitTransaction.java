@@ -17,6 +17,13 @@ public interface OvercommitTransaction<T extends SizedElement<T>> extends Transa
 	 * This allocates the space for the transaction, but doesn't perform it. An overcommit transaction is indistinguishable from
 	 * a normal transaction after this method has been called.
 	 * </p>
+	 * <p>
+	 * Committing a transaction which hasn't been initialized initializes it first, and fails, reverting it instead, if
+	 * it can't get exactly what {@link #get()} said. Reverting a transaction which hasn't been initialized has nothing to
+	 * undo.
+	 * </p>
+	 *
+	 * @throws IllegalStateException If this transaction isn't open.
 	 */
 	void init();
 }
@@ -1,5 +1,7 @@
 package io.github.soniex2.libtransfer;
 
+import java.util.Objects;
+
 /**
  * @author soniex2
  */
@@ -34,6 +36,28 @@ public interface SizedElementHolder<T extends SizedElement<T>> {
 	 */
 	Transaction<T> extract(int slot, T element, boolean strong);
 
+	/**
+	 * Extract the given element(s) from the given slot, reusing transaction objects from the given context.
+	 * <p>
+	 * The returned transaction must not be used after it's been committed or reverted, as it may be reused.
+	 * See {@link TransactionContext}.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to extract from the given slot.
+	 * @param strong Whether this is a strong transaction.
+	 * @param context The context to take transaction objects from and return them to.
+	 * @return A transaction with the element(s) actually extracted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} or {@code context} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see #extract(int, SizedElement, boolean)
+	 */
+	default Transaction<T> extract(int slot, T element, boolean strong, TransactionContext context) {
+		Objects.requireNonNull(context);
+		return extract(slot, element, strong);
+	}
+
 	/**
 	 * Insert the given element(s) into the given slot.
 	 *
@@ -55,6 +79,224 @@ public interface SizedElementHolder<T extends SizedElement<T>> {
 	 */
 	Transaction<T> insert(int slot, T element, boolean strong);
 
+	/**
+	 * Insert the given element(s) into the given slot, reusing transaction objects from the given context.
+	 * <p>
+	 * The returned transaction must not be used after it's been committed or reverted, as it may be reused.
+	 * See {@link TransactionContext}.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to insert into the given slot.
+	 * @param strong Whether this is a strong transaction.
+	 * @param context The context to take transaction objects from and return them to.
+	 * @return A transaction with the element(s) actually inserted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} or {@code context} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see #insert(int, SizedElement, boolean)
+	 */
+	default Transaction<T> insert(int slot, T element, boolean strong, TransactionContext context) {
+		Objects.requireNonNull(context);
+		return insert(slot, element, strong);
+	}
+
+	/**
+	 * Extract the given element(s) from the given slots, in order, as a single transaction.
+	 * <p>
+	 * Each slot gives up as much of what's still left to extract as it can, until the given element(s) are used up.
+	 * The returned transaction commits or reverts all of it as a unit.
+	 * </p>
+	 *
+	 * @param slots The slots.
+	 * @param element The element(s) to extract from the given slots.
+	 * @param strong Whether this is a strong transaction.
+	 * @return A transaction with the element(s) actually extracted.
+	 * @throws IndexOutOfBoundsException If any slot is out of range.
+	 * @throws NullPointerException If {@code slots} or {@code element} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see CompositeTransaction
+	 */
+	default Transaction<T> extractBulk(int[] slots, T element, boolean strong) {
+		Objects.requireNonNull(slots);
+		return CompositeTransaction.collectSlots(new CompositeTransaction<>(element.withCount(0), isConcurrent()), slots, element,
+				(slot, left) -> extract(slot, left, strong));
+	}
+
+	/**
+	 * Extract the given element(s) from the given range of slots, in order, as a single transaction.
+	 *
+	 * @param fromSlot The first slot, inclusive.
+	 * @param toSlot The last slot, exclusive.
+	 * @param element The element(s) to extract from the given slots.
+	 * @param strong Whether this is a strong transaction.
+	 * @return A transaction with the element(s) actually extracted.
+	 * @throws IndexOutOfBoundsException If {@code fromSlot > toSlot} or either is out of range.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see #extractBulk(int[], SizedElement, boolean)
+	 */
+	default Transaction<T> extractBulk(int fromSlot, int toSlot, T element, boolean strong) {
+		if (fromSlot < 0 || fromSlot > toSlot || toSlot > getSlots()) {
+			throw new IndexOutOfBoundsException("range [" + fromSlot + ", " + toSlot + ")");
+		}
+		return CompositeTransaction.collectRange(new CompositeTransaction<>(element.withCount(0), isConcurrent()), fromSlot, toSlot, element,
+				(slot, left) -> extract(slot, left, strong));
+	}
+
+	/**
+	 * Insert the given element(s) into the given slots, in order, as a single transaction.
+	 * <p>
+	 * Each slot takes as much of what's still left to insert as it can, until the given element(s) are used up.
+	 * The returned transaction commits or reverts all of it as a unit.
+	 * </p>
+	 *
+	 * @param slots The slots.
+	 * @param element The element(s) to insert into the given slots.
+	 * @param strong Whether this is a strong transaction.
+	 * @return A transaction with the element(s) actually inserted.
+	 * @throws IndexOutOfBoundsException If any slot is out of range.
+	 * @throws NullPointerException If {@code slots} or {@code element} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see CompositeTransaction
+	 */
+	default Transaction<T> insertBulk(int[] slots, T element, boolean strong) {
+		Objects.requireNonNull(slots);
+		return CompositeTransaction.collectSlots(new CompositeTransaction<>(element.withCount(0), isConcurrent()), slots, element,
+				(slot, left) -> insert(slot, left, strong));
+	}
+
+	/**
+	 * Insert the given element(s) into the given range of slots, in order, as a single transaction.
+	 *
+	 * @param fromSlot The first slot, inclusive.
+	 * @param toSlot The last slot, exclusive.
+	 * @param element The element(s) to insert into the given slots.
+	 * @param strong Whether this is a strong transaction.
+	 * @return A transaction with the element(s) actually inserted.
+	 * @throws IndexOutOfBoundsException If {@code fromSlot > toSlot} or either is out of range.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @throws IllegalArgumentException If {@code strong} is {@code true} but {@link #isConcurrent()} is {@code false}.
+	 * @see #insertBulk(int[], SizedElement, boolean)
+	 */
+	default Transaction<T> insertBulk(int fromSlot, int toSlot, T element, boolean strong) {
+		if (fromSlot < 0 || fromSlot > toSlot || toSlot > getSlots()) {
+			throw new IndexOutOfBoundsException("range [" + fromSlot + ", " + toSlot + ")");
+		}
+		return CompositeTransaction.collectRange(new CompositeTransaction<>(element.withCount(0), isConcurrent()), fromSlot, toSlot, element,
+				(slot, left) -> insert(slot, left, strong));
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be extracted from the given slot,
+	 * without reserving anything.
+	 * <p>
+	 * This is only a hint in a concurrent system: an extraction right after may get a different amount.
+	 * The given element's count is ignored.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type could be extracted. {@code 0} if {@code type} is empty.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 */
+	default int availableToExtract(int slot, T type) {
+		if (type.isEmpty()) {
+			return 0;
+		}
+		Transaction<T> transaction = extract(slot, type.withCount(type.getMaxCount()), false);
+		transaction.revert();
+		return transaction.get().getCount();
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be inserted into the given slot,
+	 * without reserving anything.
+	 * <p>
+	 * This is only a hint in a concurrent system: an insertion right after may get a different amount.
+	 * The given element's count is ignored.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param type The element whose type to look for room for.
+	 * @return How many elements of the given type could be inserted. {@code 0} if {@code type} is empty.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 */
+	default int capacityFor(int slot, T type) {
+		if (type.isEmpty()) {
+			return 0;
+		}
+		Transaction<T> transaction = insert(slot, type.withCount(type.getMaxCount()), false);
+		transaction.revert();
+		return transaction.get().getCount();
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be extracted from this holder.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type could be extracted.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 * @see #availableToExtract(int, SizedElement)
+	 */
+	default long availableToExtract(T type) {
+		long total = 0;
+		for (int i = 0; i < getSlots(); i++) {
+			total += availableToExtract(i, type);
+		}
+		return total;
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be inserted into this holder.
+	 *
+	 * @param type The element whose type to look for room for.
+	 * @return How many elements of the given type could be inserted.
+	 * @throws NullPointerException If {@code type} is {@code null}.
+	 * @see #capacityFor(int, SizedElement)
+	 */
+	default long capacityFor(T type) {
+		long total = 0;
+		for (int i = 0; i < getSlots(); i++) {
+			total += capacityFor(i, type);
+		}
+		return total;
+	}
+
+	/**
+	 * Retrieve whether the given element(s) could currently be extracted from this holder, without reserving anything.
+	 *
+	 * @param element The element(s).
+	 * @return Whether the given element(s) could be extracted. Always {@code true} if {@code element} is empty.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #availableToExtract(int, SizedElement)
+	 */
+	default boolean canExtract(T element) {
+		long left = element.getCount();
+		for (int i = 0; i < getSlots() && left > 0; i++) {
+			left -= availableToExtract(i, element);
+		}
+		return left <= 0;
+	}
+
+	/**
+	 * Retrieve whether the given element(s) could currently be inserted into this holder, without reserving anything.
+	 *
+	 * @param element The element(s).
+	 * @return Whether the given element(s) could be inserted. Always {@code true} if {@code element} is empty.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #capacityFor(int, SizedElement)
+	 */
+	default boolean canInsert(T element) {
+		long left = element.getCount();
+		for (int i = 0; i < getSlots() && left > 0; i++) {
+			left -= capacityFor(i, element);
+		}
+		return left <= 0;
+	}
+
 	/**
 	 * Retrieve the maximum number of elements that can exist in the given slot, regardless of
 	 * the contained object's maximum count.
@@ -76,6 +318,21 @@ public interface SizedElementHolder<T extends SizedElement<T>> {
 	 */
 	int getSlots();
 
+	/**
+	 * Retrieve this holder's place in the global holder order, which {@link TransactionGroup}s make transactions strong
+	 * in.
+	 * <p>
+	 * Must never change. Implementations should take a unique one from {@link HolderOrdinals#next()} when they're
+	 * constructed. The default is this holder's {@link System#identityHashCode(Object) identity hash code}, which other
+	 * holders may share.
+	 * </p>
+	 *
+	 * @return This holder's ordinal.
+	 */
+	default long getOrdinal() {
+		return System.identityHashCode(this);
+	}
+
 	/**
 	 * Retrieve whether this SizedElementHolder is concurrent.
 	 *
@@ -0,0 +1,35 @@
+package io.github.soniex2.libtransfer;
+
+/**
+ * An immutable, point-in-time view of a holder's committed contents.
+ *
+ * @author soniex2
+ * @see SnapshottingSizedElementHolder#snapshot()
+ */
+public interface SizedElementSnapshot<T extends SizedElement<T>> extends AutoCloseable {
+	/**
+	 * Retrieve the element(s) the given slot held when this snapshot was taken.
+	 *
+	 * @param slot The slot.
+	 * @return The element(s) in the given slot.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws IllegalStateException If this snapshot was closed before the slot was read.
+	 */
+	T get(int slot);
+
+	/**
+	 * Retrieve how many slots the holder had when this snapshot was taken.
+	 *
+	 * @return The number of slots.
+	 */
+	int getSlots();
+
+	/**
+	 * Let go of this snapshot, so the holder no longer has to keep its contents around.
+	 * <p>
+	 * Slots which have already been read can still be read afterwards.
+	 * </p>
+	 */
+	@Override
+	void close();
+}
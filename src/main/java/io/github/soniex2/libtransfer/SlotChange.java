@@ -0,0 +1,53 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.Objects;
+
+/**
+ * A change in a slot's committed contents.
+ *
+ * @author soniex2
+ */
+public final class SlotChange<T extends SizedElement<T>> {
+	private final int slot;
+	private final T oldValue;
+	private final T newValue;
+
+	/**
+	 * Construct a new SlotChange.
+	 *
+	 * @param slot The slot.
+	 * @param oldValue The slot's previous contents.
+	 * @param newValue The slot's new contents.
+	 */
+	public SlotChange(int slot, T oldValue, T newValue) {
+		this.slot = slot;
+		this.oldValue = Objects.requireNonNull(oldValue);
+		this.newValue = Objects.requireNonNull(newValue);
+	}
+
+	/**
+	 * @return The slot.
+	 */
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * @return The slot's previous contents.
+	 */
+	public T getOldValue() {
+		return oldValue;
+	}
+
+	/**
+	 * @return The slot's new contents.
+	 */
+	public T getNewValue() {
+		return newValue;
+	}
+
+	@Override
+	public String toString() {
+		return "SlotChange{slot=" + slot + ", oldValue=" + oldValue + ", newValue=" + newValue + "}";
+	}
+}
@@ -0,0 +1,19 @@
+package io.github.soniex2.libtransfer;
+
+/**
+ * A SizedElementHolder which can take consistent snapshots of its contents, without stopping transactions.
+ *
+ * @author soniex2
+ */
+public interface SnapshottingSizedElementHolder<T extends SizedElement<T>> extends SizedElementHolder<T> {
+	/**
+	 * Take a snapshot of this holder's committed contents.
+	 * <p>
+	 * The snapshot reflects every commit which happened before this call, and none which happened after it.
+	 * Transactions may keep going while the snapshot is being read.
+	 * </p>
+	 *
+	 * @return The snapshot.
+	 */
+	SizedElementSnapshot<T> snapshot();
+}
@@ -0,0 +1,97 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of reusable transaction objects.
+ * <p>
+ * Holders which support it take their transaction objects from the context passed to
+ * {@link SizedElementHolder#extract(int, SizedElement, boolean, TransactionContext)} and
+ * {@link SizedElementHolder#insert(int, SizedElement, boolean, TransactionContext)}, and give them back once they've
+ * been committed or reverted. This means a transaction obtained through a context <b>must not be used at all</b>
+ * after it's been committed or reverted, not even to call {@link Transaction#get()} or {@link Transaction#getStatus()}.
+ * </p>
+ * <p>
+ * On thread-safety: Contexts are not thread-safe. Use {@link #current()} to get one for the current thread. A context
+ * belongs to the thread which created it, and objects given back to it from any other thread are dropped rather than
+ * pooled, so transactions obtained through a context may still be committed or reverted on another thread, as strong
+ * transactions may be.
+ * </p>
+ *
+ * @author soniex2
+ */
+public final class TransactionContext {
+	private static final AtomicInteger NEXT_KEY = new AtomicInteger();
+	private static final ThreadLocal<TransactionContext> CURRENT = ThreadLocal.withInitial(TransactionContext::new);
+	private static final int MAX_POOLED = 64;
+
+	private final Thread owner = Thread.currentThread();
+	private Object[][] pools = new Object[0][];
+	private int[] sizes = new int[0];
+
+	/**
+	 * Retrieve the TransactionContext for the current thread.
+	 *
+	 * @return The TransactionContext for the current thread.
+	 */
+	public static TransactionContext current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Take a pooled object of the given kind out of this context.
+	 *
+	 * @param key The kind of object.
+	 * @param <R> The type of object.
+	 * @return A pooled object, or {@code null} if there's none.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R poll(Key<R> key) {
+		int id = key.id;
+		if (id >= sizes.length || sizes[id] == 0) {
+			return null;
+		}
+		Object[] pool = pools[id];
+		int size = --sizes[id];
+		R object = (R) pool[size];
+		pool[size] = null;
+		return object;
+	}
+
+	/**
+	 * Give an object back to this context, for reuse. The object is dropped if the pool is full, or if this isn't the
+	 * thread which created this context.
+	 *
+	 * @param key The kind of object.
+	 * @param object The object.
+	 * @param <R> The type of object.
+	 */
+	public <R> void recycle(Key<R> key, R object) {
+		if (Thread.currentThread() != owner) {
+			// we can't touch the pools from here. let the garbage collector have it.
+			return;
+		}
+		int id = key.id;
+		if (id >= sizes.length) {
+			pools = Arrays.copyOf(pools, id + 1);
+			sizes = Arrays.copyOf(sizes, id + 1);
+		}
+		Object[] pool = pools[id];
+		if (pool == null) {
+			pool = pools[id] = new Object[MAX_POOLED];
+		}
+		if (sizes[id] < pool.length) {
+			pool[sizes[id]++] = object;
+		}
+	}
+
+	/**
+	 * Identifies a kind of pooled object.
+	 *
+	 * @param <R> The type of object.
+	 */
+	public static final class Key<R> {
+		private final int id = NEXT_KEY.getAndIncrement();
+	}
+}
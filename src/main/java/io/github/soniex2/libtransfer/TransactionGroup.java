@@ -0,0 +1,330 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Transactions on any number of holders, committed or reverted as a unit.
+ * <p>
+ * Transactions are opened weak. On {@link #commit()}, they're all made strong first, in the global holder order
+ * given by {@link SizedElementHolder#getOrdinal()}, so groups running concurrently on the same holders never wait on
+ * each other in a cycle. If any of them can't be made strong, e.g. because its holder is being invalidated, nothing
+ * is committed and the whole group is reverted. Otherwise, nothing can invalidate them until they're committed.
+ * </p>
+ * <p>
+ * Transactions of holders which aren't {@link SizedElementHolder#isConcurrent() concurrent} can't be made strong,
+ * and may still fail to commit after others were committed. Commit then finishes committing what it can and throws a
+ * {@link PartialCommitException}.
+ * </p>
+ * <p>
+ * Closing a group which wasn't committed reverts it, so a group used in a try-with-resources statement is reverted
+ * if an exception escapes.
+ * </p>
+ * <p>
+ * On thread-safety: Groups are not thread-safe.
+ * </p>
+ *
+ * @author soniex2
+ */
+public final class TransactionGroup implements AutoCloseable {
+	private final TransactionContext context;
+	// parallel arrays, one entry per transaction.
+	private Transaction<?>[] transactions = new Transaction<?>[4];
+	private SizedElementHolder<?>[] holders = new SizedElementHolder<?>[4];
+	private long[] ordinals = new long[4];
+	private int size;
+	// whether the transactions are already in holder order, as they are when there's only one holder.
+	private boolean ordered = true;
+	private List<Failure> failures;
+	private TransactionStatus status = TransactionStatus.OPEN;
+
+	/**
+	 * Construct a new, empty TransactionGroup.
+	 */
+	public TransactionGroup() {
+		this.context = null;
+	}
+
+	/**
+	 * Construct a new, empty TransactionGroup, which opens transactions through the given context.
+	 *
+	 * @param context The context.
+	 * @see TransactionContext
+	 */
+	public TransactionGroup(TransactionContext context) {
+		this.context = Objects.requireNonNull(context);
+	}
+
+	/**
+	 * Extract the given element(s) from the given slot of the given holder, as part of this group.
+	 *
+	 * @param holder The holder.
+	 * @param slot The slot.
+	 * @param element The element(s) to extract.
+	 * @param <T> The element type.
+	 * @return The element(s) actually extracted. Nothing is added to this group if this is empty.
+	 * @throws IllegalStateException If this group isn't open.
+	 * @see SizedElementHolder#extract(int, SizedElement, boolean)
+	 */
+	public <T extends SizedElement<T>> T extract(SizedElementHolder<T> holder, int slot, T element) {
+		checkOpen();
+		return keep(holder, context == null ? holder.extract(slot, element, false) : holder.extract(slot, element, false, context));
+	}
+
+	/**
+	 * Insert the given element(s) into the given slot of the given holder, as part of this group.
+	 *
+	 * @param holder The holder.
+	 * @param slot The slot.
+	 * @param element The element(s) to insert.
+	 * @param <T> The element type.
+	 * @return The element(s) actually inserted. Nothing is added to this group if this is empty.
+	 * @throws IllegalStateException If this group isn't open.
+	 * @see SizedElementHolder#insert(int, SizedElement, boolean)
+	 */
+	public <T extends SizedElement<T>> T insert(SizedElementHolder<T> holder, int slot, T element) {
+		checkOpen();
+		return keep(holder, context == null ? holder.insert(slot, element, false) : holder.insert(slot, element, false, context));
+	}
+
+	/**
+	 * Add an open transaction on the given holder to this group.
+	 *
+	 * @param holder The holder the transaction is on.
+	 * @param transaction The transaction.
+	 * @param <T> The element type.
+	 * @throws IllegalStateException If the transaction or this group isn't open.
+	 */
+	public <T extends SizedElement<T>> void add(SizedElementHolder<T> holder, Transaction<T> transaction) {
+		checkOpen();
+		if (transaction.getStatus() != TransactionStatus.OPEN) {
+			throw new IllegalStateException();
+		}
+		append(Objects.requireNonNull(holder), transaction);
+	}
+
+	private <T extends SizedElement<T>> T keep(SizedElementHolder<T> holder, Transaction<T> transaction) {
+		T element = transaction.get();
+		if (element.isEmpty()) {
+			// free locks. there are none to free if the holder was invalidated meanwhile.
+			revert(transaction);
+		} else {
+			append(holder, transaction);
+		}
+		return element;
+	}
+
+	private void append(SizedElementHolder<?> holder, Transaction<?> transaction) {
+		if (size == transactions.length) {
+			transactions = Arrays.copyOf(transactions, size * 2);
+			holders = Arrays.copyOf(holders, size * 2);
+			ordinals = Arrays.copyOf(ordinals, size * 2);
+		}
+		long ordinal = holder.getOrdinal();
+		if (size > 0 && ordinal < ordinals[size - 1]) {
+			ordered = false;
+		}
+		transactions[size] = transaction;
+		holders[size] = holder;
+		ordinals[size] = ordinal;
+		size++;
+	}
+
+	private void checkOpen() {
+		if (status != TransactionStatus.OPEN) {
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * Commit every transaction in this group.
+	 *
+	 * @return {@code true} if every transaction was committed. {@code false} if none were, because one of them
+	 * couldn't be made strong. See {@link #getFailures()}.
+	 * @throws IllegalStateException If this group isn't open.
+	 * @throws PartialCommitException If some transactions were committed, but others failed to.
+	 */
+	public boolean commit() {
+		checkOpen();
+		if (!ordered) {
+			sort();
+		}
+		for (int i = 0; i < size; i++) {
+			Transaction<?> transaction = transactions[i];
+			if (transaction.isConcurrent()) {
+				transaction.makeStrong();
+				if (!transaction.isStrong()) {
+					fail(holders[i], transaction.get());
+					revert();
+					return false;
+				}
+			}
+		}
+		status = TransactionStatus.CONFIRMED;
+		for (int i = 0; i < size; i++) {
+			// the transaction may not be used after it's committed, so remember what it was first.
+			SizedElement<?> element = transactions[i].get();
+			boolean ok;
+			try {
+				ok = transactions[i].commit();
+			} catch (IllegalStateException e) {
+				ok = false;
+			}
+			if (!ok) {
+				fail(holders[i], element);
+			}
+		}
+		clear();
+		if (failures != null) {
+			throw new PartialCommitException(getFailures());
+		}
+		return true;
+	}
+
+	/**
+	 * Revert every transaction in this group.
+	 *
+	 * @return {@code true} if every transaction was reverted.
+	 * @throws IllegalStateException If this group isn't open.
+	 */
+	public boolean revert() {
+		checkOpen();
+		status = TransactionStatus.REVERTED;
+		boolean ok = true;
+		for (int i = 0; i < size; i++) {
+			ok &= revert(transactions[i]);
+		}
+		clear();
+		return ok;
+	}
+
+	private static boolean revert(Transaction<?> transaction) {
+		try {
+			return transaction.revert();
+		} catch (IllegalStateException e) {
+			// already reverted, e.g. by a lease, or invalidated, possibly just now. either undoes it just as well.
+			return transaction.getStatus() != TransactionStatus.CONFIRMED;
+		}
+	}
+
+	/**
+	 * Revert this group, unless it's been committed or reverted already.
+	 */
+	@Override
+	public void close() {
+		if (status == TransactionStatus.OPEN) {
+			revert();
+		}
+	}
+
+	/**
+	 * Retrieve this group's status: {@link TransactionStatus#OPEN}, {@link TransactionStatus#CONFIRMED} or
+	 * {@link TransactionStatus#REVERTED}.
+	 *
+	 * @return This group's status.
+	 */
+	public TransactionStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * Retrieve the transactions which failed to commit, or which kept the group from committing.
+	 *
+	 * @return The failures.
+	 */
+	public List<Failure> getFailures() {
+		return failures == null ? Collections.<Failure>emptyList() : Collections.unmodifiableList(failures);
+	}
+
+	private void fail(SizedElementHolder<?> holder, SizedElement<?> element) {
+		if (failures == null) {
+			failures = new ArrayList<>();
+		}
+		failures.add(new Failure(holder, element));
+	}
+
+	private void clear() {
+		Arrays.fill(transactions, 0, size, null);
+		Arrays.fill(holders, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * Put the transactions in holder order. Insertion sort, as groups are small. Stable, so transactions on the same
+	 * holder stay in the order they were opened.
+	 */
+	private void sort() {
+		for (int i = 1; i < size; i++) {
+			Transaction<?> transaction = transactions[i];
+			SizedElementHolder<?> holder = holders[i];
+			long ordinal = ordinals[i];
+			int j = i;
+			for (; j > 0 && ordinals[j - 1] > ordinal; j--) {
+				transactions[j] = transactions[j - 1];
+				holders[j] = holders[j - 1];
+				ordinals[j] = ordinals[j - 1];
+			}
+			transactions[j] = transaction;
+			holders[j] = holder;
+			ordinals[j] = ordinal;
+		}
+		ordered = true;
+	}
+
+	/**
+	 * A transaction which failed.
+	 */
+	public static final class Failure {
+		private final SizedElementHolder<?> holder;
+		private final SizedElement<?> element;
+
+		Failure(SizedElementHolder<?> holder, SizedElement<?> element) {
+			this.holder = holder;
+			this.element = element;
+		}
+
+		/**
+		 * Retrieve the holder the transaction was on.
+		 *
+		 * @return The holder.
+		 */
+		public SizedElementHolder<?> getHolder() {
+			return holder;
+		}
+
+		/**
+		 * Retrieve the element(s) the transaction was moving.
+		 *
+		 * @return The element(s).
+		 */
+		public SizedElement<?> getElement() {
+			return element;
+		}
+	}
+
+	/**
+	 * Thrown when a group was only partially committed.
+	 */
+	public static final class PartialCommitException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final transient List<Failure> failures;
+
+		PartialCommitException(List<Failure> failures) {
+			super(failures.size() + " transaction(s) failed to commit");
+			this.failures = failures;
+		}
+
+		/**
+		 * Retrieve the transactions which failed to commit.
+		 *
+		 * @return The failures.
+		 */
+		public List<Failure> getFailures() {
+			return failures;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.soniex2.libtransfer;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out dense type ids, starting from {@code 0}, for type keys.
+ * <p>
+ * Looking up an id which was already handed out doesn't lock. Ids are never taken back.
+ * </p>
+ *
+ * @author soniex2
+ * @see TypedSizedElement#typeId()
+ */
+public final class TypeRegistry<K> {
+	private final ConcurrentHashMap<K, Integer> ids = new ConcurrentHashMap<>();
+	// written before the id is published in ids.
+	private volatile Object[] keys = new Object[16];
+	// guarded by this.
+	private int size;
+
+	/**
+	 * Retrieve the type id for the given key, handing out the next one if it doesn't have one yet.
+	 *
+	 * @param key The type key. Keys with the same {@code equals}/{@code hashCode} get the same id.
+	 * @return The type id.
+	 * @throws NullPointerException If {@code key} is {@code null}.
+	 */
+	public int idOf(K key) {
+		Integer id = ids.get(Objects.requireNonNull(key));
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = ids.get(key);
+			if (id == null) {
+				Object[] keys = this.keys;
+				if (size == keys.length) {
+					this.keys = keys = Arrays.copyOf(keys, keys.length * 2);
+				}
+				keys[size] = key;
+				id = size++;
+				ids.put(key, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Retrieve the key for the given type id.
+	 *
+	 * @param id The type id.
+	 * @return The type key.
+	 * @throws IndexOutOfBoundsException If no key has the given id.
+	 */
+	@SuppressWarnings("unchecked")
+	public K keyOf(int id) {
+		Object[] keys = this.keys;
+		Object key = id < 0 || id >= keys.length ? null : keys[id];
+		if (key == null) {
+			throw new IndexOutOfBoundsException("type id " + id);
+		}
+		return (K) key;
+	}
+
+	/**
+	 * Retrieve how many type ids have been handed out.
+	 *
+	 * @return The number of type ids.
+	 */
+	public int size() {
+		return ids.size();
+	}
+}
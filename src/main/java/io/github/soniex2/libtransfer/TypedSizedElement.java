@@ -0,0 +1,35 @@
+package io.github.soniex2.libtransfer;
+
+/**
+ * A SizedElement whose type is identified by a dense integer id, so type checks are a primitive comparison.
+ * <p>
+ * Holders which know about it, like {@link io.github.soniex2.libtransfer.impl.TypedSizedElementHolderImpl}, can keep
+ * the type ids of their slots in packed arrays, and find slots by scanning those instead of calling
+ * {@link #hasSameType(SizedElement)} on every slot.
+ * </p>
+ *
+ * @author soniex2
+ * @see TypeRegistry
+ */
+public interface TypedSizedElement<T extends TypedSizedElement<T>> extends SizedElement<T> {
+	/**
+	 * The type id of empty elements.
+	 */
+	int NO_TYPE = -1;
+
+	/**
+	 * Retrieve this element's type id.
+	 * <p>
+	 * Type ids must be stable, small and non-negative, e.g. from a {@link TypeRegistry}: two non-empty elements have
+	 * the same type id if and only if they have the same type. Empty elements return {@link #NO_TYPE}.
+	 * </p>
+	 *
+	 * @return This element's type id.
+	 */
+	int typeId();
+
+	@Override
+	default boolean hasSameType(T other) {
+		return typeId() == other.typeId();
+	}
+}
@@ -0,0 +1,122 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.IndexedSizedElementHolder;
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementFilter;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionGroup;
+
+import java.util.Arrays;
+
+/**
+ * A move which keeps holders from fragmenting.
+ * <p>
+ * Where {@link SimpleMove} goes by slot index, this extracts from the smallest stacks first, so they empty out, and
+ * inserts into the fullest partial stacks of the same type first, so they fill up, before starting new stacks in empty
+ * slots. Holders then end up with fewer, fuller slots, which makes every later scan over them cheaper.
+ * </p>
+ * <p>
+ * Slots are ordered by their committed contents, which are only a hint in a concurrent system, so the order may not
+ * be exact, but the move itself is all or nothing, same as SimpleMove.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class BestFitMove<T extends SizedElement<T>> implements MoveAlgorithm<T> {
+	@Override
+	public boolean move(SizedElementHolder<T> from, SizedElementHolder<T> to, SizedElementFilter<T> filter) {
+		TransactionContext context = TransactionContext.current();
+		T el = filter.get();
+		if (el.isEmpty()) {
+			return true;
+		}
+		if (!Probes.mayMove(from, to, el)) {
+			return false;
+		}
+		try (TransactionGroup group = new TransactionGroup(context)) {
+			T left = el;
+			for (int slot : extractOrder(from, el)) {
+				T ex = group.extract(from, slot, left);
+				if (!ex.isEmpty()) {
+					left = left.split(ex);
+					if (left.isEmpty()) {
+						break;
+					}
+				}
+			}
+			if (!left.isEmpty()) {
+				return false;
+			}
+			left = el;
+			for (int slot : insertOrder(to, el)) {
+				T in = group.insert(to, slot, left);
+				if (!in.isEmpty()) {
+					left = left.split(in);
+					if (left.isEmpty()) {
+						break;
+					}
+				}
+			}
+			return left.isEmpty() && group.commit();
+		}
+	}
+
+	/**
+	 * Retrieve the slots holding the given element's type, smallest stacks first.
+	 */
+	private static <T extends SizedElement<T>> int[] extractOrder(SizedElementHolder<T> holder, T type) {
+		// indexed holders can tell us where to look, instead of us trying every slot.
+		int[] slots = holder instanceof IndexedSizedElementHolder ? ((IndexedSizedElementHolder<T>) holder).slotsContaining(type) : null;
+		int count = slots == null ? holder.getSlots() : slots.length;
+		// count in the high half, slot in the low half, so sorting the keys sorts by count, then by slot.
+		long[] keys = new long[count];
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = slots == null ? i : slots[i];
+			T value = holder.get(slot);
+			if (!value.isEmpty() && value.hasSameType(type)) {
+				keys[n++] = (long) value.getCount() << 32 | slot;
+			}
+		}
+		return slotsOf(keys, n, null, 0);
+	}
+
+	/**
+	 * Retrieve the slots with room for the given element's type, partial stacks with the least room first, then empty
+	 * slots by index.
+	 */
+	private static <T extends SizedElement<T>> int[] insertOrder(SizedElementHolder<T> holder, T type) {
+		int[] slots = holder instanceof IndexedSizedElementHolder ? ((IndexedSizedElementHolder<T>) holder).slotsAccepting(type) : null;
+		int count = slots == null ? holder.getSlots() : slots.length;
+		long[] keys = new long[count];
+		int[] empty = new int[count];
+		int n = 0;
+		int e = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = slots == null ? i : slots[i];
+			T value = holder.get(slot);
+			if (value.isEmpty()) {
+				empty[e++] = slot;
+			} else if (value.hasSameType(type)) {
+				int room = Math.min(value.getMaxCount(), holder.getSlotLimit(slot)) - value.getCount();
+				if (room > 0) {
+					keys[n++] = (long) room << 32 | slot;
+				}
+			}
+		}
+		return slotsOf(keys, n, empty, e);
+	}
+
+	private static int[] slotsOf(long[] keys, int n, int[] then, int m) {
+		Arrays.sort(keys, 0, n);
+		int[] result = new int[n + m];
+		for (int i = 0; i < n; i++) {
+			result[i] = (int) keys[i];
+		}
+		if (m > 0) {
+			System.arraycopy(then, 0, result, n, m);
+		}
+		return result;
+	}
+}
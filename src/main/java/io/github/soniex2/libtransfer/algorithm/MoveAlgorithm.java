@@ -0,0 +1,27 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementFilter;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+
+/**
+ * A way of moving elements from one holder to another.
+ *
+ * @author soniex2
+ * @see SimpleMove
+ * @see BestFitMove
+ */
+@FunctionalInterface
+public interface MoveAlgorithm<T extends SizedElement<T>> {
+	/**
+	 * Move the filter's element(s) from one holder to another, all or nothing.
+	 *
+	 * @param from The holder to move from.
+	 * @param to The holder to move to.
+	 * @param filter The element(s) to move.
+	 * @return Whether the element(s) were moved. If {@code false}, nothing was moved.
+	 * @throws io.github.soniex2.libtransfer.TransactionGroup.PartialCommitException If only some of the element(s)
+	 * were moved, which can only happen with holders that aren't concurrent.
+	 */
+	boolean move(SizedElementHolder<T> from, SizedElementHolder<T> to, SizedElementFilter<T> filter);
+}
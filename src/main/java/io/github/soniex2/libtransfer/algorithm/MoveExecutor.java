@@ -0,0 +1,218 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementFilter;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs batches of moves in parallel.
+ * <p>
+ * Moves are split into groups which share no holders: two moves are in the same group if they touch a common holder,
+ * directly or through other moves. Each group runs on a single thread, in the order its moves were given, so moves
+ * which could affect each other's results always run in the same order, and give the same results as running the
+ * whole batch one move after another. Separate groups run in parallel on a {@link ForkJoinPool}.
+ * </p>
+ * <p>
+ * This only accounts for the moves in the batch: anything else using the same holders at the same time can still
+ * change the results.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class MoveExecutor<T extends SizedElement<T>> {
+	// groups are handed out in ranges of at least this many moves, so tiny groups don't each cost a task.
+	private static final int MIN_MOVES_PER_TASK = 64;
+
+	private final MoveAlgorithm<T> algorithm;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Construct a new MoveExecutor which runs the given algorithm on the common pool.
+	 *
+	 * @param algorithm The algorithm.
+	 */
+	public MoveExecutor(MoveAlgorithm<T> algorithm) {
+		this(algorithm, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Construct a new MoveExecutor which runs the given algorithm on the given pool.
+	 *
+	 * @param algorithm The algorithm.
+	 * @param pool The pool.
+	 */
+	public MoveExecutor(MoveAlgorithm<T> algorithm, ForkJoinPool pool) {
+		this.algorithm = Objects.requireNonNull(algorithm);
+		this.pool = Objects.requireNonNull(pool);
+	}
+
+	/**
+	 * Run the given moves, and wait for them to finish.
+	 * <p>
+	 * If any move throws a RuntimeException, the other moves still run, and the exception of the earliest move which
+	 * threw is rethrown once they're done. Errors aren't caught: they propagate as soon as they're thrown, and some
+	 * moves may then never run.
+	 * </p>
+	 *
+	 * @param moves The moves.
+	 * @return Whether each move succeeded, in the order the moves were given.
+	 */
+	public boolean[] execute(List<Move<T>> moves) {
+		int n = moves.size();
+		boolean[] results = new boolean[n];
+		RuntimeException[] errors = new RuntimeException[n];
+		// union-find over holders, numbered in the order they're first seen.
+		Map<SizedElementHolder<T>, Integer> ids = new IdentityHashMap<>();
+		int[] parent = new int[2 * n];
+		for (int i = 0; i < n; i++) {
+			Move<T> move = moves.get(i);
+			int a = id(ids, parent, move.from);
+			int b = id(ids, parent, move.to);
+			a = find(parent, a);
+			b = find(parent, b);
+			// the lower id wins, so each group's root is the first holder seen in it.
+			if (a < b) {
+				parent[b] = a;
+			} else {
+				parent[a] = b;
+			}
+		}
+		// sort the moves by group, keeping each group's moves in order: count, then place.
+		int holders = ids.size();
+		int[] start = new int[holders + 1];
+		int[] group = new int[n];
+		for (int i = 0; i < n; i++) {
+			group[i] = find(parent, ids.get(moves.get(i).from));
+			start[group[i] + 1]++;
+		}
+		for (int i = 0; i < holders; i++) {
+			start[i + 1] += start[i];
+		}
+		int[] order = new int[n];
+		int[] next = start.clone();
+		for (int i = 0; i < n; i++) {
+			order[next[group[i]]++] = i;
+		}
+		Runner runner = new Runner(moves, order, group, results, errors, 0, n, Math.max(MIN_MOVES_PER_TASK, n / (pool.getParallelism() * 4 + 1)));
+		if (n <= MIN_MOVES_PER_TASK || pool.getParallelism() == 1) {
+			runner.compute();
+		} else {
+			pool.invoke(runner);
+		}
+		for (RuntimeException error : errors) {
+			if (error != null) {
+				throw error;
+			}
+		}
+		return results;
+	}
+
+	private int id(Map<SizedElementHolder<T>, Integer> ids, int[] parent, SizedElementHolder<T> holder) {
+		Integer id = ids.get(holder);
+		if (id == null) {
+			id = ids.size();
+			ids.put(holder, id);
+			parent[id] = id;
+		}
+		return id;
+	}
+
+	private static int find(int[] parent, int id) {
+		while (parent[id] != id) {
+			// path halving.
+			parent[id] = parent[parent[id]];
+			id = parent[id];
+		}
+		return id;
+	}
+
+	/**
+	 * Runs a range of moves, sorted by group, splitting it in two while it's big enough. Splits are always at group
+	 * boundaries, so a group is never split.
+	 */
+	private final class Runner extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Move<T>> moves;
+		private final int[] order;
+		private final int[] group;
+		private final boolean[] results;
+		private final RuntimeException[] errors;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		Runner(List<Move<T>> moves, int[] order, int[] group, boolean[] results, RuntimeException[] errors, int from, int to, int threshold) {
+			this.moves = moves;
+			this.order = order;
+			this.group = group;
+			this.results = results;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > threshold) {
+				int mid = (from + to) >>> 1;
+				// move the split forward to where the next group starts.
+				int g = group[order[mid]];
+				while (mid < to && group[order[mid]] == g) {
+					mid++;
+				}
+				if (mid == to) {
+					// or backward, if this range ends with the group.
+					mid = (from + to) >>> 1;
+					while (mid > from && group[order[mid - 1]] == g) {
+						mid--;
+					}
+				}
+				if (mid > from && mid < to) {
+					invokeAll(new Runner(moves, order, group, results, errors, from, mid, threshold),
+							new Runner(moves, order, group, results, errors, mid, to, threshold));
+					return;
+				}
+			}
+			for (int i = from; i < to; i++) {
+				int index = order[i];
+				Move<T> move = moves.get(index);
+				try {
+					results[index] = algorithm.move(move.from, move.to, move.filter);
+				} catch (RuntimeException e) {
+					errors[index] = e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A move request.
+	 */
+	public static final class Move<T extends SizedElement<T>> {
+		final SizedElementHolder<T> from;
+		final SizedElementHolder<T> to;
+		final SizedElementFilter<T> filter;
+
+		/**
+		 * Construct a new move request.
+		 *
+		 * @param from The holder to move from.
+		 * @param to The holder to move to.
+		 * @param filter The element(s) to move.
+		 */
+		public Move(SizedElementHolder<T> from, SizedElementHolder<T> to, SizedElementFilter<T> filter) {
+			this.from = Objects.requireNonNull(from);
+			this.to = Objects.requireNonNull(to);
+			this.filter = Objects.requireNonNull(filter);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.MultiSizedElementFilter;
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionGroup;
+import io.github.soniex2.libtransfer.TransactionStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Moves elements of any number of types at once, as selected by a {@link MultiSizedElementFilter}.
+ * <p>
+ * Unlike {@link SimpleMove}, this moves as much as it can of each selected type, up to the filter's limit, rather
+ * than all or nothing. It goes over the source slots once, extracting whatever the filter lets through, then over the
+ * destination slots once, inserting what was extracted into partially filled slots of the same type, and noting empty
+ * ones, which only get what the partially filled slots couldn't take. If the destination can't take everything, the
+ * extractions are trimmed back to match, without going over the slots again.
+ * </p>
+ * <p>
+ * Everything is committed at once through a {@link TransactionGroup}, so if either holder is invalidated meanwhile,
+ * nothing is moved.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class MultiMove<T extends SizedElement<T>> {
+	/**
+	 * Move elements from one holder to another.
+	 *
+	 * @param from The holder to move from.
+	 * @param to The holder to move to.
+	 * @param filter Selects which types to move, and how many of each.
+	 * @return How many elements were moved, over all types.
+	 * @throws TransactionGroup.PartialCommitException If only some of the elements were moved, which can only happen
+	 * with holders that aren't concurrent.
+	 */
+	public long move(SizedElementHolder<T> from, SizedElementHolder<T> to, MultiSizedElementFilter<T> filter) {
+		TransactionContext context = TransactionContext.current();
+		// one per type seen in the source, in the order they were seen. there are usually few types, so a list will do.
+		List<Moving<T>> moving = new ArrayList<>();
+		try {
+			for (int slot = 0; slot < from.getSlots(); slot++) {
+				T value = from.get(slot);
+				if (value.isEmpty()) {
+					continue;
+				}
+				Moving<T> m = find(moving, value);
+				if (m == null) {
+					m = new Moving<>(value, filter.limit(value));
+					moving.add(m);
+				}
+				long left = m.limit - m.extracted.total;
+				if (left <= 0) {
+					continue;
+				}
+				Transaction<T> ex = from.extract(slot, value.withCount((int) Math.min(left, value.getMaxCount())), false, context);
+				m.extracted.add(slot, ex);
+			}
+			long pending = 0;
+			for (Moving<T> m : moving) {
+				pending += m.extracted.total;
+			}
+			// partially filled slots first, so stacks are topped up before new ones are started.
+			int[] empty = new int[16];
+			int empties = 0;
+			for (int slot = 0; slot < to.getSlots() && pending > 0; slot++) {
+				T value = to.get(slot);
+				if (value.isEmpty()) {
+					if (empties == empty.length) {
+						empty = Arrays.copyOf(empty, empties * 2);
+					}
+					empty[empties++] = slot;
+				} else {
+					Moving<T> m = find(moving, value);
+					if (m != null) {
+						pending -= insert(to, slot, m, context);
+					}
+				}
+			}
+			for (int i = 0; i < empties && pending > 0; i++) {
+				// any type will do. a racing insertion may have claimed the slot, so try them in turn.
+				for (Moving<T> m : moving) {
+					long inserted = insert(to, empty[i], m, context);
+					if (inserted > 0) {
+						pending -= inserted;
+						break;
+					}
+				}
+			}
+			long moved = 0;
+			for (Moving<T> m : moving) {
+				// each trim lowers the larger side, so this ends, at worst with nothing of this type moved.
+				while (m.extracted.total != m.inserted.total) {
+					if (m.extracted.total > m.inserted.total) {
+						m.extracted.trim(m.inserted.total, (slot, count) -> from.extract(slot, m.type.withCount(count), false, context));
+					} else {
+						m.inserted.trim(m.extracted.total, (slot, count) -> to.insert(slot, m.type.withCount(count), false, context));
+					}
+				}
+				moved += m.extracted.total;
+			}
+			if (moved == 0) {
+				return 0;
+			}
+			// the group takes it from here, reverting everything itself if it can't commit.
+			try (TransactionGroup group = new TransactionGroup(context)) {
+				boolean open = true;
+				for (Moving<T> m : moving) {
+					open &= m.extracted.handOver(group, from);
+					open &= m.inserted.handOver(group, to);
+				}
+				// the rest can't be committed without what was invalidated along with its holder.
+				return open && group.commit() ? moved : 0;
+			}
+		} catch (RuntimeException | Error e) {
+			for (Moving<T> m : moving) {
+				m.extracted.revert();
+				m.inserted.revert();
+			}
+			throw e;
+		}
+	}
+
+	private long insert(SizedElementHolder<T> to, int slot, Moving<T> m, TransactionContext context) {
+		long left = m.extracted.total - m.inserted.total;
+		if (left <= 0) {
+			return 0;
+		}
+		Transaction<T> in = to.insert(slot, m.type.withCount((int) Math.min(left, m.type.getMaxCount())), false, context);
+		return m.inserted.add(slot, in);
+	}
+
+	private static <T extends SizedElement<T>> Moving<T> find(List<Moving<T>> moving, T value) {
+		for (Moving<T> m : moving) {
+			if (m.type.hasSameType(value)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * What's being moved of a single type.
+	 */
+	private static final class Moving<T extends SizedElement<T>> {
+		// a non-empty element of the type, as empty elements may not keep their type.
+		final T type;
+		final long limit;
+		final Side<T> extracted = new Side<>();
+		final Side<T> inserted = new Side<>();
+
+		Moving(T type, long limit) {
+			this.type = type;
+			this.limit = limit;
+		}
+	}
+
+	/**
+	 * The open transactions on one side of a move, for a single type.
+	 */
+	private static final class Side<T extends SizedElement<T>> {
+		final List<Transaction<T>> transactions = new ArrayList<>();
+		final List<Integer> slots = new ArrayList<>();
+		long total;
+
+		/**
+		 * Keep the given transaction if it got anything, or revert it otherwise.
+		 *
+		 * @return How many elements it got.
+		 */
+		long add(int slot, Transaction<T> transaction) {
+			int count = transaction.get().getCount();
+			if (count == 0) {
+				revert(transaction); // free locks
+				return 0;
+			}
+			transactions.add(transaction);
+			slots.add(slot);
+			total += count;
+			return count;
+		}
+
+		/**
+		 * Bring the total down to the given target, by reverting transactions, latest first, then reopening smaller ones
+		 * on the slots they were on to make up the difference. Racing transactions may get in the way of reopening, so
+		 * this may end up below the target.
+		 */
+		void trim(long target, Reopen<T> reopen) {
+			List<Integer> freed = new ArrayList<>();
+			while (total > target) {
+				int last = transactions.size() - 1;
+				Transaction<T> transaction = transactions.remove(last);
+				total -= transaction.get().getCount();
+				freed.add(slots.remove(last));
+				revert(transaction);
+			}
+			for (int i = freed.size() - 1; i >= 0 && total < target; i--) {
+				// the slot had at least this much reserved for us a moment ago.
+				add(freed.get(i), reopen.open(freed.get(i), (int) (target - total)));
+			}
+		}
+
+		/**
+		 * Add every open transaction to the given group, which is then responsible for them. Each one is taken off
+		 * this side first, so if this throws partway through, every transaction is either still here or in the group,
+		 * and none is reverted twice.
+		 *
+		 * @return Whether they were all open. Those that weren't were invalidated along with their holder.
+		 */
+		boolean handOver(TransactionGroup group, SizedElementHolder<T> holder) {
+			boolean open = true;
+			while (!transactions.isEmpty()) {
+				int last = transactions.size() - 1;
+				Transaction<T> transaction = transactions.remove(last);
+				slots.remove(last);
+				try {
+					group.add(holder, transaction);
+				} catch (IllegalStateException e) {
+					open = false;
+				} catch (RuntimeException | Error e) {
+					// the group only takes transactions it could add, so this one is still ours.
+					revert(transaction);
+					throw e;
+				}
+			}
+			return open;
+		}
+
+		void revert() {
+			for (Transaction<T> transaction : transactions) {
+				revert(transaction);
+			}
+			transactions.clear();
+			slots.clear();
+		}
+
+		private static void revert(Transaction<?> transaction) {
+			// weak transactions are invalidated along with their holder, which undoes them just as well.
+			if (transaction.getStatus() == TransactionStatus.OPEN) {
+				try {
+					transaction.revert();
+				} catch (IllegalStateException e) {
+					// invalidated just now.
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens a transaction for the given count on the given slot.
+	 */
+	@FunctionalInterface
+	private interface Reopen<T extends SizedElement<T>> {
+		Transaction<T> open(int slot, int count);
+	}
+}
@@ -0,0 +1,54 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+
+/**
+ * Checks whether a move could possibly succeed, before trying it.
+ * <p>
+ * The default {@link SizedElementHolder#canExtract(SizedElement)} and {@link SizedElementHolder#canInsert(SizedElement)}
+ * reserve and revert every slot, which costs as much as the move itself, so only holders which override them, or the
+ * per-slot probes they're built on, are probed. Others are assumed to pass, and the move finds out the hard way.
+ * </p>
+ *
+ * @author soniex2
+ */
+final class Probes {
+	private static final ClassValue<Boolean> CHEAP_EXTRACT = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return overrides(type, "canExtract", SizedElement.class) || overrides(type, "availableToExtract", int.class, SizedElement.class);
+		}
+	};
+	private static final ClassValue<Boolean> CHEAP_INSERT = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return overrides(type, "canInsert", SizedElement.class) || overrides(type, "capacityFor", int.class, SizedElement.class);
+		}
+	};
+
+	private Probes() {
+	}
+
+	/**
+	 * Retrieve whether the given element(s) might be movable between the given holders.
+	 *
+	 * @param from The holder to move from.
+	 * @param to The holder to move to.
+	 * @param element The element(s).
+	 * @param <T> The element type.
+	 * @return {@code false} if a cheap probe says they can't be moved, {@code true} otherwise.
+	 */
+	static <T extends SizedElement<T>> boolean mayMove(SizedElementHolder<T> from, SizedElementHolder<T> to, T element) {
+		return (!CHEAP_EXTRACT.get(from.getClass()) || from.canExtract(element))
+				&& (!CHEAP_INSERT.get(to.getClass()) || to.canInsert(element));
+	}
+
+	private static boolean overrides(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes).getDeclaringClass() != SizedElementHolder.class;
+		} catch (NoSuchMethodException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
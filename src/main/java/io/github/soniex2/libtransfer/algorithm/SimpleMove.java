@@ -1,65 +1,57 @@
 package io.github.soniex2.libtransfer.algorithm;
 
+import io.github.soniex2.libtransfer.IndexedSizedElementHolder;
 import io.github.soniex2.libtransfer.SizedElement;
 import io.github.soniex2.libtransfer.SizedElementFilter;
 import io.github.soniex2.libtransfer.SizedElementHolder;
-import io.github.soniex2.libtransfer.Transaction;
-
-import java.util.ArrayList;
-import java.util.List;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionGroup;
 
 /**
  * @author soniex2
  */
-public class SimpleMove<T extends SizedElement<T>> {
+public class SimpleMove<T extends SizedElement<T>> implements MoveAlgorithm<T> {
+	@Override
 	public boolean move(SizedElementHolder<T> from, SizedElementHolder<T> to, SizedElementFilter<T> filter) {
 		T el = filter.get();
 		T el2 = el;
-		List<Transaction<T>> transactions = new ArrayList<>();
-		try {
-			for (int i = 0; i < from.getSlots(); i++) {
-				Transaction<T> ex = from.extract(i, el, from.isConcurrent());
-				if (!ex.get().isEmpty()) {
-					el = el.split(ex.get());
-					transactions.add(ex);
+		// holders with non-reserving probes can tell us we can't possibly move, without us reserving every slot.
+		if (!Probes.mayMove(from, to, el)) {
+			return false;
+		}
+		// transactions that come out empty are reverted right away, and their objects reused for the next slot.
+		// anything left open when the group closes, e.g. because of an exception, is reverted.
+		try (TransactionGroup group = new TransactionGroup(TransactionContext.current())) {
+			// indexed holders can tell us where to look, instead of us trying every slot.
+			int[] slots = from instanceof IndexedSizedElementHolder ? ((IndexedSizedElementHolder<T>) from).slotsContaining(el) : null;
+			int count = slots == null ? from.getSlots() : slots.length;
+			for (int i = 0; i < count; i++) {
+				T ex = group.extract(from, slots == null ? i : slots[i], el);
+				if (!ex.isEmpty()) {
+					el = el.split(ex);
 					if (el.isEmpty()) {
 						break;
 					}
-				} else {
-					ex.revert(); // free locks
 				}
 			}
 			if (!el.isEmpty()) {
-				for (Transaction<T> transaction : transactions) {
-					transaction.revert();
-				}
-				transactions.clear();
 				return false;
 			}
-			for (int i = 0; i < to.getSlots(); i++) {
-				Transaction<T> in = to.insert(i, el2, to.isConcurrent());
-				if (!in.get().isEmpty()) {
-					el2 = el2.split(in.get());
-					transactions.add(in);
+			slots = to instanceof IndexedSizedElementHolder ? ((IndexedSizedElementHolder<T>) to).slotsAccepting(el2) : null;
+			count = slots == null ? to.getSlots() : slots.length;
+			for (int i = 0; i < count; i++) {
+				T in = group.insert(to, slots == null ? i : slots[i], el2);
+				if (!in.isEmpty()) {
+					el2 = el2.split(in);
 					if (el2.isEmpty()) {
 						break;
 					}
-				} else {
-					in.revert();
 				}
 			}
 			if (!el2.isEmpty()) {
-				for (Transaction<T> transaction : transactions) {
-					transaction.revert();
-				}
-				transactions.clear();
 				return false;
 			}
-		} finally {
-			for (Transaction<T> transaction : transactions) {
-				transaction.commit();
-			}
+			return group.commit();
 		}
-		return true;
 	}
 }
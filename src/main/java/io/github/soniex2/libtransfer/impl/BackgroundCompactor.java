@@ -0,0 +1,76 @@
+package io.github.soniex2.libtransfer.impl;
+
+import java.io.Closeable;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compacts a holder in the background, a small step at a time.
+ * <p>
+ * Steps run on a daemon thread, one every period, each going over at most the given number of slots, for at most
+ * the given time, so the compactor never competes with other transactions for long. A step which throws is logged,
+ * and doesn't stop later steps.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#compact(int, long)
+ */
+public final class BackgroundCompactor implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(BackgroundCompactor.class.getName());
+
+	public static final int DEFAULT_SLOTS_PER_STEP = 1024;
+	public static final long DEFAULT_TIME_SLICE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+	public static final long DEFAULT_PERIOD_MILLIS = 10;
+
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Start compacting the given holder in the background, with the default budget.
+	 *
+	 * @param holder The holder.
+	 */
+	public BackgroundCompactor(SizedElementHolderImpl<?> holder) {
+		this(holder, DEFAULT_SLOTS_PER_STEP, DEFAULT_TIME_SLICE_NANOS, DEFAULT_PERIOD_MILLIS);
+	}
+
+	/**
+	 * Start compacting the given holder in the background.
+	 *
+	 * @param holder The holder.
+	 * @param slotsPerStep The most slots to go over per step.
+	 * @param timeSliceNanos The most time to spend per step, in nanoseconds.
+	 * @param periodMillis The time between steps, in milliseconds.
+	 * @throws IllegalArgumentException If any of the numbers isn't positive.
+	 */
+	public BackgroundCompactor(SizedElementHolderImpl<?> holder, int slotsPerStep, long timeSliceNanos, long periodMillis) {
+		Objects.requireNonNull(holder);
+		if (slotsPerStep <= 0 || timeSliceNanos <= 0 || periodMillis <= 0) {
+			throw new IllegalArgumentException("Non-positive budget");
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "libtransfer compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				holder.compact(slotsPerStep, timeSliceNanos);
+			} catch (RuntimeException e) {
+				// an exception would cancel the schedule, silently.
+				LOGGER.log(Level.WARNING, "Compaction step failed", e);
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop compacting. A step in progress is let finish.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,422 @@
+package io.github.soniex2.libtransfer.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An append-only journal of slot changes, with a checkpoint file, for {@link JournaledSizedElementHolder}.
+ * <p>
+ * Changes are appended as fixed-size records to a memory-mapped segment file, so they survive the process crashing
+ * as soon as they're appended, and are forced to disk in batches, either by {@link #sync()} or periodically. Full
+ * segments are folded into the checkpoint in the background, from the files alone, without touching the holder.
+ * </p>
+ * <p>
+ * Records hold a slot's whole contents, as a type id and a count, and the last record for a slot wins. The caller
+ * must append a slot's records in the order the slot took those contents, so any prefix of the journal, such as what
+ * a crash leaves behind, is a state the holder actually went through, slot by slot.
+ * </p>
+ *
+ * @author soniex2
+ */
+final class CommitJournal implements Closeable {
+	// slot, type id, count, check.
+	private static final int RECORD_SIZE = 16;
+	// a record with this slot clears everything before it, and holds the new size in its type id.
+	private static final int RESIZE = -1;
+	private static final int CHECKPOINT_MAGIC = 0x4C544350;
+	private static final String CHECKPOINT = "checkpoint";
+	private static final String CHECKPOINT_TMP = "checkpoint.tmp";
+	private static final String SEGMENT_PREFIX = "journal.";
+
+	private final Path directory;
+	private final int segmentRecords;
+	private final Object appendLock = new Object();
+	private final Object syncLock = new Object();
+	private final Object checkpointLock = new Object();
+
+	// guarded by appendLock.
+	private long generation;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private long appended;
+	private boolean closed;
+	// guarded by syncLock.
+	private long synced;
+	// guarded by checkpointLock.
+	private long checkpointed;
+
+	private ScheduledExecutorService flusher;
+	private volatile IOException failure;
+
+	/**
+	 * Construct a new CommitJournal in the given directory, creating it if needed.
+	 *
+	 * @param directory The directory.
+	 * @param segmentRecords How many records each segment file holds.
+	 * @throws IOException If the directory can't be created.
+	 */
+	CommitJournal(Path directory, int segmentRecords) throws IOException {
+		if (segmentRecords <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive: " + segmentRecords);
+		}
+		this.directory = Files.createDirectories(directory);
+		this.segmentRecords = segmentRecords;
+	}
+
+	/**
+	 * Rebuild the journaled state from the checkpoint and whatever segments haven't been folded into it yet, then
+	 * fold them in, so the journal starts out empty.
+	 *
+	 * @return The state, or {@code null} if the directory holds none.
+	 * @throws IOException If the files can't be read, or are corrupt.
+	 */
+	State recover() throws IOException {
+		synchronized (checkpointLock) {
+			State state = readCheckpoint();
+			checkpointed = state == null ? 0 : state.generation;
+			List<Long> segments = segments();
+			for (long segment : segments) {
+				if (segment > checkpointed) {
+					state = replay(state, segment);
+				}
+			}
+			if (!segments.isEmpty()) {
+				long last = segments.get(segments.size() - 1);
+				if (state != null && last > checkpointed) {
+					state.generation = last;
+					writeCheckpoint(state);
+				}
+				checkpointed = Math.max(checkpointed, last);
+				for (long segment : segments) {
+					Files.deleteIfExists(segmentPath(segment));
+				}
+			}
+			generation = checkpointed;
+			return state;
+		}
+	}
+
+	/**
+	 * Open a new segment to append to, and start syncing and checkpointing in the background.
+	 *
+	 * @param syncIntervalMillis How often to force appended records to disk, in milliseconds.
+	 * @throws IOException If the segment can't be created.
+	 */
+	void start(long syncIntervalMillis) throws IOException {
+		synchronized (appendLock) {
+			openSegment(generation + 1);
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "libtransfer journal " + directory);
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(() -> {
+			try {
+				sync();
+				foldClosedSegments();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Append a slot's new contents. Does nothing once closed.
+	 * <p>
+	 * Records for the same slot must be appended in the order the slot took those contents.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param typeId The type id of the element(s) in the slot. Ignored if the count is 0.
+	 * @param count How many elements are in the slot.
+	 * @throws UncheckedIOException If a new segment was needed, but couldn't be created.
+	 */
+	void append(int slot, int typeId, int count) {
+		synchronized (appendLock) {
+			if (closed) {
+				return;
+			}
+			if (!segment.hasRemaining()) {
+				try {
+					rotate();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			segment.putInt(slot).putInt(typeId).putInt(count).putInt(check(slot, typeId, count));
+			appended++;
+		}
+	}
+
+	/**
+	 * Append a resize: everything before it no longer matters.
+	 *
+	 * @param size The new size.
+	 */
+	void resized(int size) {
+		append(RESIZE, size, 0);
+	}
+
+	/**
+	 * Force everything appended so far to disk. Concurrent calls share a single force.
+	 *
+	 * @throws IOException If forcing failed, now or in the background.
+	 */
+	void sync() throws IOException {
+		MappedByteBuffer segment;
+		long target;
+		synchronized (appendLock) {
+			segment = this.segment;
+			target = appended;
+		}
+		synchronized (syncLock) {
+			if (synced < target) {
+				// a rotation in between forces the old segment itself, so this one is enough.
+				segment.force();
+				synced = target;
+			}
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Close the current segment and fold everything into the checkpoint.
+	 *
+	 * @throws IOException If the checkpoint can't be written.
+	 */
+	void checkpoint() throws IOException {
+		synchronized (appendLock) {
+			if (closed) {
+				throw new IOException("Journal closed");
+			}
+			rotate();
+		}
+		foldClosedSegments();
+		checkFailure();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (appendLock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			// null if never started.
+			if (segment != null) {
+				segment.force();
+			}
+			if (channel != null) {
+				channel.close();
+			}
+		}
+		foldClosedSegments();
+		checkFailure();
+	}
+
+	private void checkFailure() throws IOException {
+		IOException failure = this.failure;
+		if (failure != null) {
+			throw new IOException("Background journal operation failed", failure);
+		}
+	}
+
+	// with appendLock held.
+	private void rotate() throws IOException {
+		segment.force();
+		channel.close();
+		openSegment(generation + 1);
+	}
+
+	// with appendLock held.
+	private void openSegment(long generation) throws IOException {
+		channel = FileChannel.open(segmentPath(generation), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// mapping past the end grows the file, with zeroes, which never pass the check.
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+		this.generation = generation;
+	}
+
+	private void foldClosedSegments() throws IOException {
+		synchronized (checkpointLock) {
+			long current;
+			synchronized (appendLock) {
+				current = generation;
+			}
+			if (checkpointed + 1 >= current) {
+				return;
+			}
+			State state = readCheckpoint();
+			for (long segment = checkpointed + 1; segment < current; segment++) {
+				state = replay(state, segment);
+			}
+			if (state != null) {
+				state.generation = current - 1;
+				writeCheckpoint(state);
+			}
+			for (long segment = checkpointed + 1; segment < current; segment++) {
+				Files.deleteIfExists(segmentPath(segment));
+			}
+			checkpointed = current - 1;
+		}
+	}
+
+	private Path segmentPath(long generation) {
+		return directory.resolve(SEGMENT_PREFIX + generation);
+	}
+
+	private List<Long> segments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+			for (Path path : stream) {
+				try {
+					segments.add(Long.parseLong(path.getFileName().toString().substring(SEGMENT_PREFIX.length())));
+				} catch (NumberFormatException e) {
+					// not ours.
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private static int check(int slot, int typeId, int count) {
+		int check = slot * 0x9E3779B1 ^ typeId * 0x85EBCA77 ^ count * 0xC2B2AE3D;
+		// zeroes mark the end of a segment.
+		return check == 0 ? 1 : check;
+	}
+
+	private State replay(State state, long generation) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentPath(generation), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			while (buffer.remaining() >= RECORD_SIZE) {
+				int slot = buffer.getInt();
+				int typeId = buffer.getInt();
+				int count = buffer.getInt();
+				if (buffer.getInt() != check(slot, typeId, count)) {
+					// end of the segment, or a record torn by a crash.
+					break;
+				}
+				if (slot == RESIZE) {
+					state = new State(typeId);
+				} else if (state == null || slot < 0 || slot >= state.size || count < 0) {
+					throw new IOException("Corrupt journal segment " + generation);
+				} else {
+					state.set(slot, typeId, count);
+				}
+			}
+		}
+		return state;
+	}
+
+	private State readCheckpoint() throws IOException {
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(CHECKPOINT))), crc))) {
+			if (in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IOException("Not a checkpoint");
+			}
+			State state = new State(in.readInt());
+			state.generation = in.readLong();
+			for (int slot; (slot = in.readInt()) != RESIZE; ) {
+				int typeId = in.readInt();
+				int count = in.readInt();
+				if (slot < 0 || slot >= state.size || count <= 0) {
+					throw new IOException("Corrupt checkpoint");
+				}
+				state.set(slot, typeId, count);
+			}
+			long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("Corrupt checkpoint");
+			}
+			return state;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (EOFException e) {
+			throw new IOException("Truncated checkpoint", e);
+		}
+	}
+
+	private void writeCheckpoint(State state) throws IOException {
+		Path tmp = directory.resolve(CHECKPOINT_TMP);
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(state.size);
+			out.writeLong(state.generation);
+			for (int slot = 0; slot < state.size; slot++) {
+				if (state.counts[slot] != 0) {
+					out.writeInt(slot);
+					out.writeInt(state.types[slot]);
+					out.writeInt(state.counts[slot]);
+				}
+			}
+			out.writeInt(RESIZE);
+			out.flush();
+			out.writeLong(crc.getValue());
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(tmp, directory.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Journaled slot contents, as type id and count per slot.
+	 */
+	static final class State {
+		final int size;
+		final int[] types;
+		final int[] counts;
+		private long generation;
+
+		State(int size) {
+			if (size < 0) {
+				throw new IllegalArgumentException("Negative size: " + size);
+			}
+			this.size = size;
+			types = new int[size];
+			counts = new int[size];
+		}
+
+		void set(int slot, int typeId, int count) {
+			types[slot] = count == 0 ? 0 : typeId;
+			counts[slot] = count;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incrementally merges partial stacks of the same type in a holder, a few slots at a time.
+ * <p>
+ * The holder is swept from start to end, one step at a time, wrapping around at the end. For each type, the earliest
+ * partial stack seen so far in this sweep is kept as the target, and later partial stacks of that type are poured
+ * into it, through a pair of transactions committed as a group, so stacks gravitate towards the start of the holder.
+ * When a target fills up, whatever is left of the stack that filled it becomes the new target.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#compact(int, long)
+ */
+final class Compaction<T extends SizedElement<T>> {
+	// how many types to keep targets for. past this, the oldest target is dropped.
+	private static final int MAX_TARGETS = 64;
+	// how many slots to go through between checks of the clock.
+	private static final int CLOCK_INTERVAL = 16;
+
+	private final SizedElementHolderImpl<T> holder;
+	// the following are guarded by this.
+	private Object generation;
+	private int cursor;
+	// a target slot per type, oldest first. there are usually few types, so a list will do.
+	private final List<Target<T>> targets = new ArrayList<>();
+
+	Compaction(SizedElementHolderImpl<T> holder) {
+		this.holder = holder;
+	}
+
+	/**
+	 * Run a step.
+	 *
+	 * @param generation Identifies the holder's current cells. The sweep starts over when it changes.
+	 * @param maxSlots The most slots to go through.
+	 * @param deadline The {@link System#nanoTime()} to stop at.
+	 * @return How many slots were emptied.
+	 */
+	synchronized int step(Object generation, int maxSlots, long deadline) {
+		if (this.generation != generation) {
+			this.generation = generation;
+			cursor = 0;
+			targets.clear();
+		}
+		TransactionContext context = TransactionContext.current();
+		try {
+			return sweep(holder.getSlots(), maxSlots, deadline, context);
+		} catch (IndexOutOfBoundsException e) {
+			// the holder shrank under us. the next step starts over.
+			this.generation = null;
+			return 0;
+		}
+	}
+
+	private int sweep(int slots, int maxSlots, long deadline, TransactionContext context) {
+		int emptied = 0;
+		for (int i = 0; i < maxSlots && slots > 0; i++) {
+			if (i % CLOCK_INTERVAL == CLOCK_INTERVAL - 1 && System.nanoTime() - deadline >= 0) {
+				break;
+			}
+			if (cursor >= slots) {
+				// targets are only ever before the cursor.
+				cursor = 0;
+				targets.clear();
+			}
+			int slot = cursor++;
+			T value = holder.get(slot);
+			if (value.isEmpty() || room(slot, value) == 0) {
+				continue;
+			}
+			Target<T> target = null;
+			for (Target<T> t : targets) {
+				if (t.type.hasSameType(value)) {
+					target = t;
+					break;
+				}
+			}
+			if (target == null) {
+				if (targets.size() == MAX_TARGETS) {
+					targets.remove(0);
+				}
+				targets.add(new Target<>(value, slot));
+				continue;
+			}
+			if (pour(slot, value, target.slot, context)) {
+				emptied++;
+			} else {
+				// either the target filled up, or it's gone. either way, this slot is the next best target.
+				target.slot = slot;
+			}
+		}
+		return emptied;
+	}
+
+	/**
+	 * Move as much as fits from one slot into another.
+	 *
+	 * @return Whether the source slot was emptied.
+	 */
+	private boolean pour(int from, T value, int to, TransactionContext context) {
+		T target = holder.get(to);
+		if (target.isEmpty() || !target.hasSameType(value)) {
+			return false;
+		}
+		int amount = Math.min(value.getCount(), room(to, target));
+		if (amount == 0) {
+			return false;
+		}
+		// reserve the room first, then take exactly what was reserved. the group makes both strong before committing
+		// either, so if the holder was invalidated or cleared meanwhile, neither is committed.
+		int reserved;
+		try (TransactionGroup group = new TransactionGroup(context)) {
+			reserved = group.insert(holder, to, value.withCount(amount)).getCount();
+			if (reserved == 0 || group.extract(holder, from, value.withCount(reserved)).getCount() != reserved) {
+				return false;
+			}
+			if (!group.commit()) {
+				return false;
+			}
+		}
+		return reserved == value.getCount() && holder.get(from).isEmpty();
+	}
+
+	private int room(int slot, T value) {
+		return Math.max(0, Math.min(value.getMaxCount(), holder.getSlotLimit(slot)) - value.getCount());
+	}
+
+	private static final class Target<T> {
+		final T type;
+		int slot;
+
+		Target(T type, int slot) {
+			this.type = type;
+			this.slot = slot;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementSnapshot;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A snapshot of a SizedElementHolderImpl's cells, which only copies the slots that change.
+ * <p>
+ * While the snapshot is registered with its holder, every commit first {@link #preserve(int, SizedElement) preserves}
+ * what the slot held before it, if nothing was preserved for that slot yet. Reading a slot preserves it too, so each
+ * slot is copied at most once, and once all of them have been, the snapshot no longer needs its holder.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#snapshot()
+ */
+final class CopyOnWriteSnapshot<T extends SizedElement<T>> implements SizedElementSnapshot<T> {
+	private final AtomicReferenceArray<SizedElementCell<T>> cells;
+	private final AtomicReferenceArray<T> preserved;
+	private final AtomicInteger left;
+	private final Consumer<CopyOnWriteSnapshot<T>> release;
+	private volatile boolean closed;
+
+	/**
+	 * Construct a new CopyOnWriteSnapshot of the given cells. Must be registered before any further commits.
+	 *
+	 * @param cells The cells.
+	 * @param release Unregisters the snapshot from its holder. Called at most once.
+	 */
+	CopyOnWriteSnapshot(AtomicReferenceArray<SizedElementCell<T>> cells, Consumer<CopyOnWriteSnapshot<T>> release) {
+		this.cells = cells;
+		this.preserved = new AtomicReferenceArray<>(cells.length());
+		this.left = new AtomicInteger(cells.length());
+		this.release = release;
+	}
+
+	/**
+	 * Record what a slot held before a commit, unless something was already recorded for it.
+	 *
+	 * @param slot The slot.
+	 * @param value The slot's contents before the commit.
+	 */
+	void preserve(int slot, T value) {
+		if (preserved.get(slot) == null && preserved.compareAndSet(slot, null, value) && left.decrementAndGet() == 0) {
+			close();
+		}
+	}
+
+	@Override
+	public T get(int slot) {
+		// read the cell first: a commit preserves the slot before changing it, so if we see the new contents here,
+		// we'll see the preserved ones below.
+		T value = cells.get(slot).get();
+		T old = preserved.get(slot);
+		if (old != null) {
+			return old;
+		}
+		if (closed) {
+			throw new IllegalStateException("Snapshot closed");
+		}
+		preserve(slot, value);
+		return preserved.get(slot);
+	}
+
+	@Override
+	public int getSlots() {
+		return cells.length();
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			synchronized (this) {
+				if (!closed) {
+					closed = true;
+					release.accept(this);
+				}
+			}
+		}
+	}
+}
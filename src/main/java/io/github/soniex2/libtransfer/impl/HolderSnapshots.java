@@ -0,0 +1,201 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.SizedElementSnapshot;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+/**
+ * Writes holder contents to, and restores them from, a compact binary snapshot.
+ * <p>
+ * A snapshot is a magic number, followed by unsigned LEB128 varints: the number of slots, then, for each non-empty
+ * slot, how many empty slots come before it, its type id and its count, and finally how many empty slots are left.
+ * Elements are mapped to type ids and counts through a {@link PackedElementCodec}.
+ * </p>
+ *
+ * @author soniex2
+ */
+public final class HolderSnapshots {
+	private static final int MAGIC = 0x4C54534E;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private HolderSnapshots() {
+	}
+
+	/**
+	 * Write a snapshot of the given holder's committed contents to the given channel.
+	 * <p>
+	 * This takes no locks, so transactions keep going while it runs. Each slot is read once, but slots are read one
+	 * after another, so the snapshot may mix earlier and later states of different slots. The holder must not be
+	 * resized meanwhile. For a consistent snapshot, use {@link #write(SizedElementSnapshot, PackedElementCodec, WritableByteChannel)}.
+	 * </p>
+	 *
+	 * @param holder The holder.
+	 * @param codec The codec.
+	 * @param out The channel.
+	 * @param <T> The element type.
+	 * @throws IOException If writing to the channel fails.
+	 */
+	public static <T extends SizedElement<T>> void write(SizedElementHolder<T> holder, PackedElementCodec<T> codec, WritableByteChannel out) throws IOException {
+		write(holder::get, holder.getSlots(), codec, out);
+	}
+
+	/**
+	 * Write the given point-in-time view of a holder's contents to the given channel.
+	 *
+	 * @param snapshot The view, which must not have been closed yet.
+	 * @param codec The codec.
+	 * @param out The channel.
+	 * @param <T> The element type.
+	 * @throws IOException If writing to the channel fails.
+	 * @see io.github.soniex2.libtransfer.SnapshottingSizedElementHolder#snapshot()
+	 */
+	public static <T extends SizedElement<T>> void write(SizedElementSnapshot<T> snapshot, PackedElementCodec<T> codec, WritableByteChannel out) throws IOException {
+		write(snapshot::get, snapshot.getSlots(), codec, out);
+	}
+
+	private static <T extends SizedElement<T>> void write(IntFunction<T> get, int slots, PackedElementCodec<T> codec, WritableByteChannel out) throws IOException {
+		Objects.requireNonNull(codec);
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.putInt(MAGIC);
+		putVarint(buffer, slots);
+		int run = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			T value = get.apply(slot);
+			if (value.isEmpty()) {
+				run++;
+				continue;
+			}
+			// three varints take at most 15 bytes.
+			if (buffer.remaining() < 15) {
+				drain(buffer, out);
+			}
+			putVarint(buffer, run);
+			putVarint(buffer, codec.getTypeId(value));
+			putVarint(buffer, value.getCount());
+			run = 0;
+		}
+		if (buffer.remaining() < 5) {
+			drain(buffer, out);
+		}
+		putVarint(buffer, run);
+		drain(buffer, out);
+	}
+
+	/**
+	 * Clear the given holder and fill it from a snapshot read from the given channel.
+	 * <p>
+	 * The snapshot is read and checked in full before the holder is touched, so a slow channel doesn't hold up
+	 * transactions. Only filling the slots happens under the holder's write lock. Open transactions are invalidated,
+	 * as with {@link SizedElementHolderImpl#clearAndResize(int)}. Slots are filled directly, without transactions.
+	 * Listeners and totals see each filled slot as a commit.
+	 * </p>
+	 *
+	 * @param holder The holder. Resized to the snapshot's size.
+	 * @param codec The codec.
+	 * @param in The channel.
+	 * @param <T> The element type.
+	 * @throws IOException If reading from the channel fails, or the snapshot is corrupt. The holder is then left
+	 * unchanged.
+	 */
+	public static <T extends SizedElement<T>> void read(SizedElementHolderImpl<T> holder, PackedElementCodec<T> codec, ReadableByteChannel in) throws IOException {
+		Objects.requireNonNull(codec);
+		Reader reader = new Reader(in);
+		if (reader.getInt() != MAGIC) {
+			throw new IOException("Not a snapshot");
+		}
+		int slots = reader.getVarint();
+		// a count of 0 marks an empty slot.
+		int[] types = new int[slots];
+		int[] counts = new int[slots];
+		long slot = reader.getVarint();
+		while (slot < slots) {
+			types[(int) slot] = reader.getVarint();
+			counts[(int) slot] = reader.getVarint();
+			if (counts[(int) slot] == 0) {
+				throw new IOException("Corrupt snapshot");
+			}
+			slot += 1L + reader.getVarint();
+		}
+		if (slot != slots) {
+			throw new IOException("Corrupt snapshot");
+		}
+		holder.clearAndRestore(slots, restorer -> {
+			for (int i = 0; i < slots; i++) {
+				if (counts[i] != 0) {
+					restorer.restore(i, Objects.requireNonNull(codec.decode(types[i], counts[i])));
+				}
+			}
+		});
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static void drain(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Buffered reads from a channel.
+	 */
+	private static final class Reader {
+		private final ReadableByteChannel in;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		Reader(ReadableByteChannel in) {
+			this.in = Objects.requireNonNull(in);
+			buffer.flip();
+		}
+
+		byte get() throws IOException {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				int read;
+				do {
+					read = in.read(buffer);
+				} while (read == 0);
+				buffer.flip();
+				if (read < 0) {
+					throw new EOFException("Truncated snapshot");
+				}
+			}
+			return buffer.get();
+		}
+
+		int getInt() throws IOException {
+			return (get() & 0xFF) << 24 | (get() & 0xFF) << 16 | (get() & 0xFF) << 8 | get() & 0xFF;
+		}
+
+		int getVarint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = get();
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					if (value < 0) {
+						break;
+					}
+					return value;
+				}
+			}
+			throw new IOException("Corrupt snapshot");
+		}
+	}
+}
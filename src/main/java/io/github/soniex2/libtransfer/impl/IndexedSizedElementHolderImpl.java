@@ -0,0 +1,199 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.IndexedSizedElementHolder;
+import io.github.soniex2.libtransfer.SizedElement;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolderImpl which keeps an index from element type to the slots holding that type, as well as an index
+ * of the slots with room for more elements.
+ * <p>
+ * Types are identified by a type key function, whose results must have the same {@code equals}/{@code hashCode}
+ * if and only if the elements {@link SizedElement#hasSameType(SizedElement) have the same type}. They're also used to
+ * keep {@link #countOf(SizedElement) per-type totals}.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class IndexedSizedElementHolderImpl<T extends SizedElement<T>> extends IndexingSizedElementHolderImpl<T> implements IndexedSizedElementHolder<T> {
+	private final Function<? super T, ?> typeKey;
+	// These are (re)created by resetIndex(), which first runs from the super constructor.
+	// Which slots hold which types, by committed contents.
+	private volatile ConcurrentHashMap<Object, Set<Integer>> slotsByType;
+	// Which slots are partially filled, by post-insert contents.
+	private volatile ConcurrentHashMap<Object, Set<Integer>> partialSlotsByType;
+	// Which slots are empty, by post-insert contents.
+	private volatile AtomicLongArray emptySlots;
+	// The keys each slot is currently indexed under, guarded by the slot's stripe lock.
+	private Object[] slotKeys;
+	private Object[] partialSlotKeys;
+
+	/**
+	 * Construct a new IndexedSizedElementHolderImpl with the given size, empty element factory and type key function.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 * @param typeKey The type key function. Only called with non-empty elements.
+	 */
+	public IndexedSizedElementHolderImpl(int size, Supplier<T> emptyFactory, Function<? super T, ?> typeKey) {
+		super(size, emptyFactory, new ReentrantReadWriteLock(true), typeKey);
+		this.typeKey = Objects.requireNonNull(typeKey, "Type key function must not be null");
+	}
+
+	/**
+	 * Construct a new IndexedSizedElementHolderImpl with the given size, empty element factory, type key function
+	 * and lock.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 * @param typeKey The type key function. Only called with non-empty elements.
+	 * @param rwlock The lock guarding {@link #invalidate()} and {@link #clearAndResize(int)}.
+	 * @see SizedElementHolderImpl#SizedElementHolderImpl(int, Supplier, ReadWriteLock)
+	 */
+	public IndexedSizedElementHolderImpl(int size, Supplier<T> emptyFactory, Function<? super T, ?> typeKey, ReadWriteLock rwlock) {
+		super(size, emptyFactory, rwlock, typeKey);
+		this.typeKey = Objects.requireNonNull(typeKey, "Type key function must not be null");
+	}
+
+	@Override
+	public int[] slotsContaining(T type) {
+		if (type.isEmpty()) {
+			return new int[0];
+		}
+		return toSortedArray(slotsByType.get(typeKey.apply(type)), 0);
+	}
+
+	@Override
+	public int[] slotsAccepting(T element) {
+		if (element.isEmpty()) {
+			return new int[0];
+		}
+		int perSlot = Math.max(1, Math.min(element.getMaxCount(), getSlotLimit(0)));
+		int wanted = element.getCount() / perSlot + (element.getCount() % perSlot == 0 ? 0 : 1);
+		int[] result = toSortedArray(partialSlotsByType.get(typeKey.apply(element)), wanted);
+		int n = result.length - wanted;
+		AtomicLongArray emptySlots = this.emptySlots;
+		for (int i = 0; i < emptySlots.length() && n < result.length; i++) {
+			for (long bits = emptySlots.get(i); bits != 0 && n < result.length; bits &= bits - 1) {
+				result[n++] = i * 64 + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	@Override
+	public long availableToExtract(T type) {
+		long total = 0;
+		for (int slot : slotsContaining(type)) {
+			total += availableToExtract(slot, type);
+		}
+		return total;
+	}
+
+	@Override
+	public long capacityFor(T type) {
+		if (type.isEmpty()) {
+			return 0;
+		}
+		long total = 0;
+		Set<Integer> partial = partialSlotsByType.get(typeKey.apply(type));
+		if (partial != null) {
+			for (int slot : partial) {
+				total += capacityFor(slot, type);
+			}
+		}
+		AtomicLongArray emptySlots = this.emptySlots;
+		for (int i = 0; i < emptySlots.length(); i++) {
+			for (long bits = emptySlots.get(i); bits != 0; bits &= bits - 1) {
+				total += capacityFor(i * 64 + Long.numberOfTrailingZeros(bits), type);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public boolean canExtract(T element) {
+		return element.isEmpty() || availableToExtract(element) >= element.getCount();
+	}
+
+	@Override
+	public boolean canInsert(T element) {
+		return element.isEmpty() || capacityFor(element) >= element.getCount();
+	}
+
+	private static int[] toSortedArray(Set<Integer> slots, int extra) {
+		if (slots == null) {
+			return new int[extra];
+		}
+		int[] sorted = slots.stream().mapToInt(Integer::intValue).sorted().toArray();
+		return extra == 0 ? sorted : Arrays.copyOf(sorted, sorted.length + extra);
+	}
+
+	@Override
+	void indexCommitted(int slot, T value) {
+		Object key = value.isEmpty() ? null : typeKey.apply(value);
+		reindex(slotsByType, slot, slotKeys[slot], key);
+		slotKeys[slot] = key;
+	}
+
+	@Override
+	void indexPostInsert(int slot, T value, int fill) {
+		Object key = fill == FILL_PARTIAL ? typeKey.apply(value) : null;
+		reindex(partialSlotsByType, slot, partialSlotKeys[slot], key);
+		partialSlotKeys[slot] = key;
+		setBit(emptySlots, slot, fill == FILL_EMPTY);
+	}
+
+	private static void reindex(ConcurrentHashMap<Object, Set<Integer>> index, int slot, Object oldKey, Object newKey) {
+		if (Objects.equals(oldKey, newKey)) {
+			return;
+		}
+		if (oldKey != null) {
+			index.computeIfPresent(oldKey, (k, slots) -> slots.remove(slot) && slots.isEmpty() ? null : slots);
+		}
+		if (newKey != null) {
+			index.compute(newKey, (k, slots) -> {
+				if (slots == null) {
+					slots = ConcurrentHashMap.newKeySet();
+				}
+				slots.add(slot);
+				return slots;
+			});
+		}
+	}
+
+	private static void setBit(AtomicLongArray bits, int index, boolean value) {
+		int word = index / 64;
+		long mask = 1L << (index % 64);
+		long old;
+		do {
+			old = bits.get(word);
+			if (((old & mask) != 0) == value) {
+				return;
+			}
+		} while (!bits.compareAndSet(word, old, old ^ mask));
+	}
+
+	@Override
+	void resetIndex(int newsize) {
+		slotKeys = new Object[newsize];
+		partialSlotKeys = new Object[newsize];
+		slotsByType = new ConcurrentHashMap<>();
+		partialSlotsByType = new ConcurrentHashMap<>();
+		AtomicLongArray emptySlots = new AtomicLongArray((newsize + 63) / 64);
+		for (int i = 0; i < emptySlots.length(); i++) {
+			int bits = Math.min(64, newsize - i * 64);
+			emptySlots.set(i, bits == 64 ? -1L : (1L << bits) - 1);
+		}
+		this.emptySlots = emptySlots;
+	}
+}
@@ -0,0 +1,105 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolderImpl which keeps an index of its slots up to date as transactions commit and reserve.
+ * <p>
+ * Slots are only reindexed when they change between empty, partially filled and full, which is rare compared to
+ * commits in general. When they do, the slot is re-read under a per-slot stripe lock, rather than trusting the
+ * reported change: listeners may see racing changes to the same slot out of order, but whichever reindexes last reads
+ * the latest contents, so the index can't be left stale.
+ * </p>
+ *
+ * @author soniex2
+ * @see IndexedSizedElementHolderImpl
+ * @see TypedSizedElementHolderImpl
+ */
+abstract class IndexingSizedElementHolderImpl<T extends SizedElement<T>> extends SizedElementHolderImpl<T> {
+	static final int FILL_EMPTY = 0;
+	static final int FILL_PARTIAL = 1;
+	static final int FILL_FULL = 2;
+
+	private static final int STRIPES = 64;
+
+	// Created by the first cleared(), which runs from the super constructor, before field initializers.
+	private Object[] stripes;
+
+	IndexingSizedElementHolderImpl(int size, Supplier<T> emptyFactory, ReadWriteLock rwlock, Function<? super T, ?> typeKey) {
+		super(size, emptyFactory, rwlock, typeKey);
+	}
+
+	/**
+	 * Index a slot's committed contents. Called with the slot's stripe lock held.
+	 *
+	 * @param slot The slot.
+	 * @param value The slot's committed contents, as just read.
+	 */
+	abstract void indexCommitted(int slot, T value);
+
+	/**
+	 * Index a slot's post-insert contents. Called with the slot's stripe lock held.
+	 *
+	 * @param slot The slot.
+	 * @param value The slot's post-insert contents, as just read.
+	 * @param fill {@link #fill(int, SizedElement) How full} the value is.
+	 */
+	abstract void indexPostInsert(int slot, T value, int fill);
+
+	/**
+	 * Replace the index with an empty one of the given size. Note that this is first called from the constructor,
+	 * before subclass fields are initialized.
+	 *
+	 * @param newsize The new size.
+	 */
+	abstract void resetIndex(int newsize);
+
+	/**
+	 * Classify a slot's contents.
+	 *
+	 * @param slot The slot.
+	 * @param value The slot's contents.
+	 * @return {@link #FILL_EMPTY}, {@link #FILL_PARTIAL} or {@link #FILL_FULL}.
+	 */
+	final int fill(int slot, T value) {
+		if (value.isEmpty()) {
+			return FILL_EMPTY;
+		}
+		return value.getCount() < Math.min(value.getMaxCount(), getSlotLimit(slot)) ? FILL_PARTIAL : FILL_FULL;
+	}
+
+	@Override
+	protected void slotCommitted(int slot, T oldValue, T newValue) {
+		if (oldValue.isEmpty() != newValue.isEmpty()) {
+			synchronized (stripes[slot % STRIPES]) {
+				indexCommitted(slot, get(slot));
+			}
+		}
+	}
+
+	@Override
+	protected void slotPostInsertChanged(int slot, T oldValue, T newValue) {
+		// post-insert contents never change from one type straight to another, so this also catches type changes.
+		if (fill(slot, oldValue) != fill(slot, newValue)) {
+			synchronized (stripes[slot % STRIPES]) {
+				T value = cell(slot).getPostInsert();
+				indexPostInsert(slot, value, fill(slot, value));
+			}
+		}
+	}
+
+	@Override
+	protected void cleared(int newsize) {
+		if (stripes == null) {
+			stripes = new Object[STRIPES];
+			for (int i = 0; i < STRIPES; i++) {
+				stripes[i] = new Object();
+			}
+		}
+		resetIndex(newsize);
+	}
+}
@@ -0,0 +1,152 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolderImpl which journals every commit to a directory, and rebuilds itself from it on construction.
+ * <p>
+ * Each commit appends a small record to a memory-mapped journal file, so committed transactions survive the process
+ * crashing. They survive the machine crashing once they've been forced to disk: every {@code syncIntervalMillis},
+ * or on {@link #sync()}, a single force covers every commit since the last one. Full journal files are folded into a
+ * checkpoint in the background, from the files alone, so checkpoints never stall transactions.
+ * </p>
+ * <p>
+ * Elements are stored as a type id and a count, through a {@link PackedElementCodec}.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class JournaledSizedElementHolder<T extends SizedElement<T>> extends SizedElementHolderImpl<T> implements Closeable {
+	public static final int DEFAULT_SEGMENT_RECORDS = 1 << 20;
+	public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+	// a slot's records must be appended in the order it took those contents. the lock for a slot is slot & STRIPE_MASK.
+	private static final int STRIPE_MASK = 63;
+
+	private final PackedElementCodec<T> codec;
+	private final Object[] stripes = new Object[STRIPE_MASK + 1];
+	// null while restoring.
+	private volatile CommitJournal journal;
+
+	/**
+	 * Construct a new JournaledSizedElementHolder journaling to the given directory.
+	 *
+	 * @param directory The directory. Created if it doesn't exist.
+	 * @param size The size, if the directory doesn't hold a journal yet. Otherwise, the journaled size is used.
+	 * @param emptyFactory The empty element factory.
+	 * @param codec The codec.
+	 * @throws IOException If the journal can't be read or created.
+	 */
+	public JournaledSizedElementHolder(Path directory, int size, Supplier<T> emptyFactory, PackedElementCodec<T> codec) throws IOException {
+		this(directory, size, emptyFactory, codec, new ReentrantReadWriteLock(true), DEFAULT_SEGMENT_RECORDS, DEFAULT_SYNC_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Construct a new JournaledSizedElementHolder journaling to the given directory, with the given lock and journal
+	 * settings.
+	 *
+	 * @param directory The directory. Created if it doesn't exist.
+	 * @param size The size, if the directory doesn't hold a journal yet. Otherwise, the journaled size is used.
+	 * @param emptyFactory The empty element factory.
+	 * @param codec The codec.
+	 * @param rwlock The lock guarding {@link #invalidate()} and {@link #clearAndResize(int)}.
+	 * @param segmentRecords How many commits each journal file holds before it's folded into the checkpoint.
+	 * @param syncIntervalMillis How often to force commits to disk, in milliseconds.
+	 * @throws IOException If the journal can't be read or created.
+	 * @see SizedElementHolderImpl#SizedElementHolderImpl(int, Supplier, ReadWriteLock)
+	 */
+	public JournaledSizedElementHolder(Path directory, int size, Supplier<T> emptyFactory, PackedElementCodec<T> codec, ReadWriteLock rwlock, int segmentRecords, long syncIntervalMillis) throws IOException {
+		super(size, emptyFactory, rwlock);
+		this.codec = Objects.requireNonNull(codec, "Codec must not be null");
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Object();
+		}
+		CommitJournal journal = new CommitJournal(directory, segmentRecords);
+		try {
+			CommitJournal.State state = journal.recover();
+			if (state != null) {
+				clearAndRestore(state.size, restorer -> {
+					for (int slot = 0; slot < state.size; slot++) {
+						if (state.counts[slot] != 0) {
+							restorer.restore(slot, Objects.requireNonNull(codec.decode(state.types[slot], state.counts[slot])));
+						}
+					}
+				});
+			}
+			journal.start(syncIntervalMillis);
+			if (state == null) {
+				journal.resized(getSlots());
+			}
+		} catch (Throwable e) {
+			// nobody else can close it, so don't leak its files and background thread.
+			try {
+				journal.close();
+			} catch (Throwable suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+		this.journal = journal;
+	}
+
+	@Override
+	protected void slotCommitted(int slot, T oldValue, T newValue) {
+		CommitJournal journal = this.journal;
+		if (journal == null) {
+			return;
+		}
+		// racing commits on the same slot may get here in any order, so journal what the slot holds now, rather than
+		// newValue. whichever append comes last then also reads the latest contents.
+		synchronized (stripes[slot & STRIPE_MASK]) {
+			T value = get(slot);
+			journal.append(slot, value.isEmpty() ? 0 : codec.getTypeId(value), value.isEmpty() ? 0 : value.getCount());
+		}
+	}
+
+	@Override
+	protected void cleared(int newsize) {
+		CommitJournal journal = this.journal;
+		if (journal != null) {
+			journal.resized(newsize);
+		}
+	}
+
+	/**
+	 * Force every commit so far to disk. Concurrent calls share a single force.
+	 *
+	 * @throws IOException If forcing failed, now or in the background.
+	 */
+	public void sync() throws IOException {
+		journal.sync();
+	}
+
+	/**
+	 * Fold every commit so far into the checkpoint, so the next construction doesn't have to replay them.
+	 * <p>
+	 * This is done in the background anyway, as journal files fill up.
+	 * </p>
+	 *
+	 * @throws IOException If the checkpoint can't be written, now or in the background.
+	 */
+	public void checkpoint() throws IOException {
+		journal.checkpoint();
+	}
+
+	/**
+	 * Force every commit so far to disk and stop journaling in the background. Commits made after this are lost.
+	 *
+	 * @throws IOException If forcing failed, now or in the background.
+	 */
+	@Override
+	public void close() throws IOException {
+		journal.close();
+	}
+}
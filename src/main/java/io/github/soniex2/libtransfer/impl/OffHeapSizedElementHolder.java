@@ -0,0 +1,48 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+import java.util.function.Supplier;
+
+/**
+ * A PackedSizedElementHolder which keeps its slots outside the Java heap, in direct ByteBuffers.
+ * <p>
+ * The heap only holds a handful of objects per holder, no matter how many slots it has, so very large holders don't
+ * add to garbage collection work. Slot updates take a striped lock instead of being a single CAS, which makes this
+ * somewhat slower than a plain PackedSizedElementHolder under contention.
+ * </p>
+ * <p>
+ * Off-heap memory is released once the holder is garbage collected, or, for the old slots, after
+ * {@link #clearAndResize(int)}, once no transactions on them remain.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class OffHeapSizedElementHolder<T extends SizedElement<T>> extends PackedSizedElementHolder<T> {
+	/**
+	 * Construct a new OffHeapSizedElementHolder with the given size, empty element and codec.
+	 *
+	 * @param size The size.
+	 * @param empty The empty element.
+	 * @param codec The codec.
+	 */
+	public OffHeapSizedElementHolder(int size, T empty, PackedElementCodec<T> codec) {
+		super(size, empty, codec);
+	}
+
+	/**
+	 * Construct a new OffHeapSizedElementHolder with the given size, empty element factory and codec.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory. Only called once.
+	 * @param codec The codec.
+	 */
+	public OffHeapSizedElementHolder(int size, Supplier<T> emptyFactory, PackedElementCodec<T> codec) {
+		super(size, emptyFactory, codec);
+	}
+
+	@Override
+	PackedSlots allocate(int size) {
+		return new PackedSlots.OffHeap(size);
+	}
+}
@@ -0,0 +1,33 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+/**
+ * Maps elements to and from a (type id, count) pair, for holders which store elements in packed form.
+ * <p>
+ * Type ids must be stable: two non-empty elements have the same type id if and only if they
+ * {@link SizedElement#hasSameType(SizedElement) have the same type}.
+ * </p>
+ *
+ * @author soniex2
+ * @see PackedSizedElementHolder
+ * @see HolderSnapshots
+ */
+public interface PackedElementCodec<T extends SizedElement<T>> {
+	/**
+	 * Retrieve the type id of the given non-empty element.
+	 *
+	 * @param element The element.
+	 * @return The type id of the given element, between {@code 0} and the holder's maximum type id, inclusive.
+	 */
+	int getTypeId(T element);
+
+	/**
+	 * Create an element with the given type id and count.
+	 *
+	 * @param typeId The type id, as returned by {@link #getTypeId(SizedElement)}.
+	 * @param count The count. Never {@code 0}.
+	 * @return An element with the given type id and count.
+	 */
+	T decode(int typeId, int count);
+}
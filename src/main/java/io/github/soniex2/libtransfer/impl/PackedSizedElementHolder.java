@@ -0,0 +1,442 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.HolderOrdinals;
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionStatus;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolder which keeps each slot packed into a single {@code long}.
+ * <p>
+ * Each slot holds the committed, post-insert and post-extract counts, as well as a type id, which a
+ * {@link PackedElementCodec} maps to and from elements. This has the same semantics as {@link SizedElementHolderImpl},
+ * but without any per-slot objects, and every update to a slot is a single CAS.
+ * </p>
+ * <p>
+ * Type ids must be between {@code 0} and {@link #MAX_TYPE_ID}, and slots can hold at most {@link #MAX_COUNT} elements.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class PackedSizedElementHolder<T extends SizedElement<T>> implements SizedElementHolder<T> {
+	public static final int MAX_TYPE_ID = 0xFFFF;
+	public static final int MAX_COUNT = 0xFFFF;
+
+	private static final TransactionContext.Key<PackedTransaction<?>> KEY = new TransactionContext.Key<>();
+
+	// slot layout: type id (16 bits), post-extract (16 bits), post-insert (16 bits), committed (16 bits).
+	// post-extract <= committed <= post-insert, and the type id is 0 whenever post-insert is 0.
+	private static final int COMMITTED = 0;
+	private static final int POST_INSERT = 16;
+	private static final int POST_EXTRACT = 32;
+	private static final int TYPE = 48;
+	private static final long MASK = 0xFFFFL;
+
+	private final ReadWriteLock rwlock = new ReentrantReadWriteLock(true);
+	private final StrongHolds strongHolds = new StrongHolds();
+	private final long ordinal = HolderOrdinals.next();
+	private final PackedElementCodec<T> codec;
+	private final T empty;
+
+	private volatile PackedSlots array;
+	private volatile AtomicBoolean valid;
+
+	/**
+	 * Construct a new PackedSizedElementHolder with the given size, empty element and codec.
+	 *
+	 * @param size The size.
+	 * @param empty The empty element.
+	 * @param codec The codec.
+	 */
+	public PackedSizedElementHolder(int size, T empty, PackedElementCodec<T> codec) {
+		this.empty = Objects.requireNonNull(empty, "Empty instance must not be null");
+		this.codec = Objects.requireNonNull(codec, "Codec must not be null");
+		clearAndResize(size);
+	}
+
+	/**
+	 * Construct a new PackedSizedElementHolder with the given size, empty element factory and codec.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory. Only called once.
+	 * @param codec The codec.
+	 */
+	public PackedSizedElementHolder(int size, Supplier<T> emptyFactory, PackedElementCodec<T> codec) {
+		this(size, Objects.requireNonNull(emptyFactory, "Factory must not be null").get(), codec);
+	}
+
+	private static int field(long packed, int shift) {
+		return (int) ((packed >>> shift) & MASK);
+	}
+
+	private static long withField(long packed, int shift, int value) {
+		return (packed & ~(MASK << shift)) | ((long) value << shift);
+	}
+
+	private T decode(int typeId, int count) {
+		return count == 0 ? empty : Objects.requireNonNull(codec.decode(typeId, count));
+	}
+
+	private int typeIdOf(T element) {
+		int typeId = codec.getTypeId(element);
+		if (typeId < 0 || typeId > MAX_TYPE_ID) {
+			throw new IllegalArgumentException("Type id out of range: " + typeId);
+		}
+		return typeId;
+	}
+
+	@Override
+	public T get(int slot) {
+		long packed = array.get(slot);
+		return decode(field(packed, TYPE), field(packed, COMMITTED));
+	}
+
+	@Override
+	public Transaction<T> extract(int slot, T element, boolean strong) {
+		return open(slot, element, strong, false, null);
+	}
+
+	@Override
+	public Transaction<T> extract(int slot, T element, boolean strong, TransactionContext context) {
+		return open(slot, element, strong, false, Objects.requireNonNull(context));
+	}
+
+	@Override
+	public Transaction<T> insert(int slot, T element, boolean strong) {
+		return open(slot, element, strong, true, null);
+	}
+
+	@Override
+	public Transaction<T> insert(int slot, T element, boolean strong, TransactionContext context) {
+		return open(slot, element, strong, true, Objects.requireNonNull(context));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Transaction<T> open(int slot, T element, boolean strong, boolean insert, TransactionContext context) {
+		Objects.requireNonNull(element);
+		PackedTransaction<T> transaction = context == null ? null : (PackedTransaction<T>) context.poll(KEY);
+		if (transaction == null) {
+			transaction = new PackedTransaction<>();
+		}
+		rwlock.readLock().lock();
+		try {
+			transaction.init(this, array, valid, slot, element, strong, insert, context);
+		} finally {
+			rwlock.readLock().unlock();
+		}
+		return transaction;
+	}
+
+	@Override
+	public int availableToExtract(int slot, T type) {
+		long packed = array.get(slot);
+		if (type.isEmpty() || !valid.get() || field(packed, POST_EXTRACT) == 0 || field(packed, TYPE) != typeIdOf(type)) {
+			return 0;
+		}
+		return field(packed, POST_EXTRACT);
+	}
+
+	@Override
+	public int capacityFor(int slot, T type) {
+		long packed = array.get(slot);
+		if (type.isEmpty() || !valid.get()) {
+			return 0;
+		}
+		int postInsert = field(packed, POST_INSERT);
+		if (postInsert != 0 && field(packed, TYPE) != typeIdOf(type)) {
+			return 0;
+		}
+		return Math.max(0, Math.min(Math.min(type.getMaxCount(), MAX_COUNT), getSlotLimit(slot)) - postInsert);
+	}
+
+	@Override
+	public int getSlotLimit(int slot) {
+		return Math.min(empty.getMaxCount(), MAX_COUNT);
+	}
+
+	@Override
+	public long getOrdinal() {
+		return ordinal;
+	}
+
+	@Override
+	public int getSlots() {
+		return array.length();
+	}
+
+	@Override
+	public boolean isConcurrent() {
+		return true;
+	}
+
+	/**
+	 * Invalidate this PackedSizedElementHolder.
+	 * <p>
+	 * This waits for open strong transactions to be committed or reverted, while refusing new ones.
+	 * </p>
+	 */
+	public void invalidate() {
+		strongHolds.beginInvalidation();
+		try {
+			rwlock.writeLock().lock();
+			try {
+				if (valid != null) {
+					valid.set(false);
+				}
+			} finally {
+				rwlock.writeLock().unlock();
+			}
+		} finally {
+			strongHolds.endInvalidation();
+		}
+	}
+
+	/**
+	 * Clear this PackedSizedElementHolder and initialize it with a new size.
+	 *
+	 * @param newsize The new size.
+	 */
+	public void clearAndResize(int newsize) {
+		// strong transactions must be able to take the read lock to finish, so wait for them before taking the write lock.
+		strongHolds.beginInvalidation();
+		rwlock.writeLock().lock();
+		try {
+			invalidate();
+			valid = new AtomicBoolean(true);
+			array = allocate(newsize);
+		} finally {
+			rwlock.writeLock().unlock();
+			strongHolds.endInvalidation();
+		}
+	}
+
+	/**
+	 * Allocate zeroed storage for the given number of slots.
+	 * <p>
+	 * Note that this is first called from the constructor, before subclass fields are initialized.
+	 * </p>
+	 *
+	 * @param size The number of slots.
+	 * @return The storage.
+	 */
+	PackedSlots allocate(int size) {
+		return new PackedSlots.Heap(size);
+	}
+
+	/**
+	 * Insert or extract transaction. Reusable: once committed or reverted, it goes back to the context it came from,
+	 * if any. Strong transactions hold the holder's {@link StrongHolds}, so they can be finished from any thread.
+	 */
+	private static final class PackedTransaction<T extends SizedElement<T>> implements Transaction<T> {
+		private PackedSizedElementHolder<T> holder;
+		// keep hold of the generation we were created in, in case we get clearAndResize'd.
+		private PackedSlots array;
+		private AtomicBoolean valid;
+		private Lock readLock;
+		private StrongHolds strongHolds;
+		private TransactionContext context;
+		private int slot;
+		private boolean insert;
+		private int typeId;
+		private int amount;
+		private T transactionSize;
+		private TransactionStatus status;
+		private boolean strong;
+
+		void init(PackedSizedElementHolder<T> holder, PackedSlots array, AtomicBoolean valid, int slot, T element, boolean strong, boolean insert, TransactionContext context) {
+			if (slot < 0 || slot >= array.length()) {
+				throw new IndexOutOfBoundsException("index " + slot);
+			}
+			this.holder = holder;
+			this.array = array;
+			this.valid = valid;
+			this.readLock = holder.rwlock.readLock();
+			this.strongHolds = holder.strongHolds;
+			this.context = context;
+			this.slot = slot;
+			this.insert = insert;
+			this.status = TransactionStatus.OPEN;
+			this.strong = strong && strongHolds.tryAcquire();
+			try {
+				if (!valid.get() || element.isEmpty()) {
+					typeId = 0;
+					amount = 0;
+				} else {
+					typeId = holder.typeIdOf(element);
+					amount = insert ? reserveInsert(element) : reserveExtract(element);
+				}
+				transactionSize = amount == element.getCount() ? element : element.withCount(amount);
+			} catch (RuntimeException | Error e) {
+				if (this.strong) {
+					strongHolds.release();
+				}
+				throw e;
+			}
+		}
+
+		private int reserveInsert(T element) {
+			int limit = Math.min(Math.min(element.getMaxCount(), MAX_COUNT), holder.getSlotLimit(slot));
+			long old, tmp;
+			int diff;
+			do {
+				old = array.get(slot);
+				int postInsert = field(old, POST_INSERT);
+				if (postInsert != 0 && field(old, TYPE) != typeId) {
+					return 0;
+				}
+				diff = Math.min(element.getCount(), limit - postInsert);
+				if (diff <= 0) {
+					return 0;
+				}
+				tmp = withField(withField(old, POST_INSERT, postInsert + diff), TYPE, typeId);
+			} while (!array.compareAndSet(slot, old, tmp));
+			return diff;
+		}
+
+		private int reserveExtract(T element) {
+			long old, tmp;
+			int diff;
+			do {
+				old = array.get(slot);
+				int postExtract = field(old, POST_EXTRACT);
+				if (postExtract == 0 || field(old, TYPE) != typeId) {
+					return 0;
+				}
+				diff = Math.min(element.getCount(), postExtract);
+				tmp = withField(old, POST_EXTRACT, postExtract - diff);
+			} while (!array.compareAndSet(slot, old, tmp));
+			return diff;
+		}
+
+		@Override
+		public T get() {
+			return transactionSize;
+		}
+
+		@Override
+		public boolean commit() {
+			finish(true);
+			return true;
+		}
+
+		@Override
+		public boolean revert() {
+			finish(false);
+			return true;
+		}
+
+		private void finish(boolean commit) {
+			// empty transactions have nothing to do, and nothing to lock.
+			boolean lock = amount != 0;
+			if (lock) {
+				readLock.lock();
+			}
+			if (!(commit ? getStatus().canConfirm() : getStatus().canRevert())) {
+				if (lock) {
+					readLock.unlock();
+				}
+				throw new IllegalStateException();
+			}
+			try {
+				if (amount != 0) {
+					long old, tmp;
+					do {
+						old = array.get(slot);
+						assert field(old, TYPE) == typeId;
+						tmp = commit ? committed(old) : reverted(old);
+					} while (!array.compareAndSet(slot, old, tmp));
+				}
+			} finally {
+				if (lock) {
+					readLock.unlock();
+				}
+				if (strong) {
+					strong = false;
+					strongHolds.release();
+				}
+			}
+			status = commit ? TransactionStatus.CONFIRMED : TransactionStatus.REVERTED;
+			if (context != null) {
+				TransactionContext context = this.context;
+				this.holder = null;
+				this.array = null;
+				this.transactionSize = null;
+				this.context = null;
+				context.recycle(KEY, this);
+			}
+		}
+
+		private long committed(long old) {
+			long tmp;
+			if (insert) {
+				tmp = withField(old, COMMITTED, field(old, COMMITTED) + amount);
+				return withField(tmp, POST_EXTRACT, field(old, POST_EXTRACT) + amount);
+			} else {
+				tmp = withField(old, COMMITTED, field(old, COMMITTED) - amount);
+				return clearTypeIfEmpty(withField(tmp, POST_INSERT, field(old, POST_INSERT) - amount));
+			}
+		}
+
+		private long reverted(long old) {
+			if (insert) {
+				return clearTypeIfEmpty(withField(old, POST_INSERT, field(old, POST_INSERT) - amount));
+			} else {
+				return withField(old, POST_EXTRACT, field(old, POST_EXTRACT) + amount);
+			}
+		}
+
+		private static long clearTypeIfEmpty(long packed) {
+			return field(packed, POST_INSERT) == 0 ? withField(packed, TYPE, 0) : packed;
+		}
+
+		@Override
+		public TransactionStatus getStatus() {
+			if (status == TransactionStatus.OPEN && !valid.get()) {
+				status = TransactionStatus.INVALIDATED;
+				if (strong) {
+					strong = false;
+					strongHolds.release();
+				}
+			}
+			return status;
+		}
+
+		@Override
+		public boolean isStrong() {
+			return strong;
+		}
+
+		@Override
+		public void makeStrong() {
+			if (!strong && getStatus() == TransactionStatus.OPEN && strongHolds.tryAcquire()) {
+				if (getStatus() != TransactionStatus.OPEN) {
+					strongHolds.release();
+				} else {
+					strong = true;
+				}
+			}
+		}
+
+		@Override
+		public void makeWeak() {
+			if (strong && getStatus() == TransactionStatus.OPEN) {
+				strongHolds.release();
+				strong = false;
+			}
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return true;
+		}
+	}
+}
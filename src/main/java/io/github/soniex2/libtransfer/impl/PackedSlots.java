@@ -0,0 +1,208 @@
+package io.github.soniex2.libtransfer.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Storage for {@link PackedSizedElementHolder}'s packed slots. Initially all zero.
+ *
+ * @author soniex2
+ */
+interface PackedSlots {
+	/**
+	 * @return The number of slots.
+	 */
+	int length();
+
+	/**
+	 * Read a slot, with volatile semantics.
+	 *
+	 * @param slot The slot.
+	 * @return The packed slot.
+	 */
+	long get(int slot);
+
+	/**
+	 * Atomically set a slot to the given value if it holds the expected value.
+	 *
+	 * @param slot The slot.
+	 * @param expect The expected value.
+	 * @param update The new value.
+	 * @return Whether the slot was updated.
+	 */
+	boolean compareAndSet(int slot, long expect, long update);
+
+	/**
+	 * Slots in an {@link AtomicLongArray}.
+	 */
+	final class Heap implements PackedSlots {
+		private final AtomicLongArray array;
+
+		Heap(int size) {
+			array = new AtomicLongArray(size);
+		}
+
+		@Override
+		public int length() {
+			return array.length();
+		}
+
+		@Override
+		public long get(int slot) {
+			return array.get(slot);
+		}
+
+		@Override
+		public boolean compareAndSet(int slot, long expect, long update) {
+			return array.compareAndSet(slot, expect, update);
+		}
+	}
+
+	/**
+	 * Slots in direct ByteBuffers, outside the Java heap.
+	 * <p>
+	 * From Java 9 on, slots are read and compared-and-set through a ByteBuffer view {@code VarHandle}, with volatile
+	 * semantics, and no locks. Java 8 has no atomic operations on ByteBuffers, so there, each slot is instead guarded
+	 * by one of a fixed number of lock stripes, which also makes reads and writes visible across threads. Memory is
+	 * only ever accessed through the buffers themselves, never through raw addresses, so it can't be freed while it's
+	 * in use. The slots are split across several buffers, as a single buffer can't be larger than 2GB.
+	 * </p>
+	 */
+	final class OffHeap implements PackedSlots {
+		private static final int STRIPES = 1024;
+		// 2^24 slots, or 128MB, per buffer.
+		private static final int CHUNK_SHIFT = 24;
+		private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+		// the view's getVolatile and compareAndSet, as (ByteBuffer, int)long and (ByteBuffer, int, long, long)boolean
+		// handles, or null before Java 9. looked up reflectively, as VarHandle isn't in Java 8.
+		private static final MethodHandle GET_VOLATILE;
+		private static final MethodHandle COMPARE_AND_SET;
+
+		static {
+			MethodHandle getVolatile = null;
+			MethodHandle compareAndSet = null;
+			try {
+				Class<?> varHandleClass = Class.forName("java.lang.invoke.VarHandle");
+				Class<?> accessMode = Class.forName("java.lang.invoke.VarHandle$AccessMode");
+				Object view = MethodHandles.class.getMethod("byteBufferViewVarHandle", Class.class, ByteOrder.class).invoke(null, long[].class, ByteOrder.nativeOrder());
+				Method toMethodHandle = varHandleClass.getMethod("toMethodHandle", accessMode);
+				getVolatile = (MethodHandle) toMethodHandle.invoke(view, accessMode(accessMode, "GET_VOLATILE"));
+				compareAndSet = (MethodHandle) toMethodHandle.invoke(view, accessMode(accessMode, "COMPARE_AND_SET"));
+			} catch (ReflectiveOperationException e) {
+				// Java 8. use the locks.
+				getVolatile = null;
+				compareAndSet = null;
+			}
+			GET_VOLATILE = getVolatile;
+			COMPARE_AND_SET = compareAndSet;
+		}
+
+		private static Object accessMode(Class<?> accessMode, String name) throws NoSuchFieldException {
+			for (Object mode : accessMode.getEnumConstants()) {
+				if (((Enum<?>) mode).name().equals(name)) {
+					return mode;
+				}
+			}
+			throw new NoSuchFieldException(name);
+		}
+
+		private final ByteBuffer[] chunks;
+		// null when slots are accessed through the handles.
+		private final Object[] stripes;
+		private final int length;
+
+		OffHeap(int size) {
+			if (size < 0) {
+				throw new NegativeArraySizeException(String.valueOf(size));
+			}
+			length = size;
+			chunks = new ByteBuffer[(int) (((long) size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+			boolean atomic = GET_VOLATILE != null;
+			for (int i = 0; i < chunks.length; i++) {
+				int slots = Math.min(CHUNK_MASK + 1, size - (i << CHUNK_SHIFT));
+				// direct buffers start out zeroed.
+				chunks[i] = ByteBuffer.allocateDirect(slots * 8).order(ByteOrder.nativeOrder());
+				atomic = atomic && isAligned(chunks[i]);
+			}
+			if (atomic) {
+				stripes = null;
+			} else {
+				stripes = new Object[STRIPES];
+				for (int i = 0; i < STRIPES; i++) {
+					stripes[i] = new Object();
+				}
+			}
+		}
+
+		/**
+		 * Check that atomic operations work on the given buffer. They don't on buffers whose memory isn't aligned to
+		 * 8 bytes, and then throw IllegalStateException. Slots are 8 bytes each, so checking the first one will do.
+		 */
+		private static boolean isAligned(ByteBuffer buffer) {
+			if (buffer.capacity() == 0) {
+				return true;
+			}
+			try {
+				long value = (long) GET_VOLATILE.invokeExact(buffer, 0);
+				return true;
+			} catch (IllegalStateException e) {
+				return false;
+			} catch (Throwable e) {
+				throw new AssertionError(e);
+			}
+		}
+
+		private int checkIndex(int slot) {
+			if (slot < 0 || slot >= length) {
+				throw new IndexOutOfBoundsException("index " + slot);
+			}
+			return slot;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public long get(int slot) {
+			ByteBuffer buffer = chunks[checkIndex(slot) >>> CHUNK_SHIFT];
+			int offset = (slot & CHUNK_MASK) * 8;
+			if (stripes == null) {
+				try {
+					return (long) GET_VOLATILE.invokeExact(buffer, offset);
+				} catch (Throwable e) {
+					throw new AssertionError(e);
+				}
+			}
+			synchronized (stripes[slot & (STRIPES - 1)]) {
+				return buffer.getLong(offset);
+			}
+		}
+
+		@Override
+		public boolean compareAndSet(int slot, long expect, long update) {
+			ByteBuffer buffer = chunks[checkIndex(slot) >>> CHUNK_SHIFT];
+			int offset = (slot & CHUNK_MASK) * 8;
+			if (stripes == null) {
+				try {
+					return (boolean) COMPARE_AND_SET.invokeExact(buffer, offset, expect, update);
+				} catch (Throwable e) {
+					throw new AssertionError(e);
+				}
+			}
+			synchronized (stripes[slot & (STRIPES - 1)]) {
+				if (buffer.getLong(offset) != expect) {
+					return false;
+				}
+				buffer.putLong(offset, update);
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.HolderOrdinals;
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionContext;
+import io.github.soniex2.libtransfer.TransactionStatus;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolder for use from a single thread.
+ * <p>
+ * This has the same semantics as {@link SizedElementHolderImpl}, but keeps its slots in plain arrays, with no atomics
+ * or locks. It's not concurrent, so it doesn't support strong transactions.
+ * </p>
+ * <p>
+ * Neither the holder nor its transactions may be shared between threads without external synchronization.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class SingleThreadedSizedElementHolder<T extends SizedElement<T>> implements SizedElementHolder<T> {
+	private static final TransactionContext.Key<SingleThreadedTransaction<?>> KEY = new TransactionContext.Key<>();
+
+	private final Supplier<T> emptyFactory;
+	private final long ordinal = HolderOrdinals.next();
+	// For use with getSlotLimit only!
+	private final T empty;
+
+	private T[] committed;
+	private T[] postInsert;
+	private T[] postExtract;
+	// bumped on invalidation, so open transactions can tell.
+	private int generation;
+	private boolean valid;
+
+	/**
+	 * Construct a new SingleThreadedSizedElementHolder with the given size and empty element factory.
+	 * <p>
+	 * The empty element factory must not return null!
+	 * </p>
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 */
+	public SingleThreadedSizedElementHolder(int size, Supplier<T> emptyFactory) {
+		this.emptyFactory = Objects.requireNonNull(emptyFactory, "Factory must not be null");
+		empty = Objects.requireNonNull(emptyFactory.get(), "Empty instance must not be null");
+		clearAndResize(size);
+	}
+
+	@Override
+	public T get(int slot) {
+		return committed[slot];
+	}
+
+	@Override
+	public Transaction<T> extract(int slot, T element, boolean strong) {
+		return open(slot, element, strong, false, null);
+	}
+
+	@Override
+	public Transaction<T> extract(int slot, T element, boolean strong, TransactionContext context) {
+		return open(slot, element, strong, false, Objects.requireNonNull(context));
+	}
+
+	@Override
+	public Transaction<T> insert(int slot, T element, boolean strong) {
+		return open(slot, element, strong, true, null);
+	}
+
+	@Override
+	public Transaction<T> insert(int slot, T element, boolean strong, TransactionContext context) {
+		return open(slot, element, strong, true, Objects.requireNonNull(context));
+	}
+
+	@SuppressWarnings("unchecked")
+	private Transaction<T> open(int slot, T element, boolean strong, boolean insert, TransactionContext context) {
+		Objects.requireNonNull(element);
+		if (strong) {
+			throw new IllegalArgumentException("Strong transactions are not supported by single-threaded holders");
+		}
+		if (slot < 0 || slot >= committed.length) {
+			throw new IndexOutOfBoundsException("slot " + slot);
+		}
+		SingleThreadedTransaction<T> transaction = context == null ? null : (SingleThreadedTransaction<T>) context.poll(KEY);
+		if (transaction == null) {
+			transaction = new SingleThreadedTransaction<>();
+		}
+		transaction.holder = this;
+		transaction.context = context;
+		transaction.slot = slot;
+		transaction.insert = insert;
+		transaction.generation = generation;
+		transaction.status = TransactionStatus.OPEN;
+		transaction.transactionSize = element.isEmpty() || !valid ? element.withCount(0)
+				: insert ? reserveInsert(slot, element) : reserveExtract(slot, element);
+		return transaction;
+	}
+
+	private T reserveInsert(int slot, T element) {
+		T old = postInsert[slot];
+		if (!old.hasCombinableType(element)) {
+			return element.withCount(0);
+		}
+		T diff = element.withCount(Math.min(element.getCount(), old.getMaxCount() - old.getCount()));
+		postInsert[slot] = old.combine(diff);
+		return diff;
+	}
+
+	private T reserveExtract(int slot, T element) {
+		T old = postExtract[slot];
+		if (!old.hasCombinableType(element)) {
+			return element.withCount(0);
+		}
+		T diff = element.withCount(Math.min(element.getCount(), old.getCount()));
+		postExtract[slot] = old.split(diff);
+		return diff;
+	}
+
+	@Override
+	public int availableToExtract(int slot, T type) {
+		T old = postExtract[slot];
+		if (type.isEmpty() || old.isEmpty() || !valid || !old.hasSameType(type)) {
+			return 0;
+		}
+		return old.getCount();
+	}
+
+	@Override
+	public int capacityFor(int slot, T type) {
+		T old = postInsert[slot];
+		if (type.isEmpty() || !valid || !old.hasCombinableType(type)) {
+			return 0;
+		}
+		return old.isEmpty() ? Math.min(old.getMaxCount(), type.getMaxCount()) : old.getMaxCount() - old.getCount();
+	}
+
+	@Override
+	public int getSlotLimit(int slot) {
+		return empty.getMaxCount();
+	}
+
+	@Override
+	public long getOrdinal() {
+		return ordinal;
+	}
+
+	@Override
+	public int getSlots() {
+		return committed.length;
+	}
+
+	@Override
+	public boolean isConcurrent() {
+		return false;
+	}
+
+	/**
+	 * Invalidate this SingleThreadedSizedElementHolder.
+	 */
+	public void invalidate() {
+		valid = false;
+		generation++;
+	}
+
+	/**
+	 * Clear this SingleThreadedSizedElementHolder and initialize it with a new size.
+	 *
+	 * @param newsize The new size.
+	 */
+	@SuppressWarnings("unchecked")
+	public void clearAndResize(int newsize) {
+		invalidate();
+		committed = (T[]) new SizedElement<?>[newsize];
+		postInsert = (T[]) new SizedElement<?>[newsize];
+		postExtract = (T[]) new SizedElement<?>[newsize];
+		for (int i = 0; i < newsize; i++) {
+			T value = Objects.requireNonNull(emptyFactory.get(), "Empty instance must not be null");
+			committed[i] = value;
+			postInsert[i] = value;
+			postExtract[i] = value;
+		}
+		valid = true;
+	}
+
+	/**
+	 * A plain transaction. Reusable through a {@link TransactionContext}, like {@link SizedElementCell}'s.
+	 */
+	private static final class SingleThreadedTransaction<T extends SizedElement<T>> implements Transaction<T> {
+		private SingleThreadedSizedElementHolder<T> holder;
+		private TransactionContext context;
+		private int slot;
+		private boolean insert;
+		private int generation;
+		private T transactionSize;
+		private TransactionStatus status;
+
+		@Override
+		public T get() {
+			return transactionSize;
+		}
+
+		@Override
+		public boolean commit() {
+			finish(true);
+			return true;
+		}
+
+		@Override
+		public boolean revert() {
+			finish(false);
+			return true;
+		}
+
+		private void finish(boolean commit) {
+			if (!(commit ? getStatus().canConfirm() : getStatus().canRevert())) {
+				throw new IllegalStateException();
+			}
+			if (!transactionSize.isEmpty()) {
+				SingleThreadedSizedElementHolder<T> holder = this.holder;
+				int slot = this.slot;
+				if (insert) {
+					if (commit) {
+						// same order as SizedElementCell, for the same reasons.
+						holder.committed[slot] = holder.committed[slot].combine(transactionSize);
+						holder.postExtract[slot] = holder.postExtract[slot].combine(transactionSize);
+					} else {
+						holder.postInsert[slot] = holder.postInsert[slot].split(transactionSize);
+					}
+				} else {
+					if (commit) {
+						holder.committed[slot] = holder.committed[slot].split(transactionSize);
+						holder.postInsert[slot] = holder.postInsert[slot].split(transactionSize);
+					} else {
+						holder.postExtract[slot] = holder.postExtract[slot].combine(transactionSize);
+					}
+				}
+			}
+			status = commit ? TransactionStatus.CONFIRMED : TransactionStatus.REVERTED;
+			if (context != null) {
+				TransactionContext context = this.context;
+				this.holder = null;
+				this.transactionSize = null;
+				this.context = null;
+				context.recycle(KEY, this);
+			}
+		}
+
+		@Override
+		public TransactionStatus getStatus() {
+			if (status == TransactionStatus.OPEN && holder.generation != generation) {
+				status = TransactionStatus.INVALIDATED;
+			}
+			return status;
+		}
+
+		@Override
+		public boolean isStrong() {
+			return false;
+		}
+
+		@Override
+		public void makeStrong() {
+			throw new IllegalStateException("Strong transactions are not supported by single-threaded holders");
+		}
+
+		@Override
+		public void makeWeak() {
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return false;
+		}
+	}
+}
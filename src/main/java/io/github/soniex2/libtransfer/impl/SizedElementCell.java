@@ -1,7 +1,9 @@
 package io.github.soniex2.libtransfer.impl;
 
+import io.github.soniex2.libtransfer.OvercommitTransaction;
 import io.github.soniex2.libtransfer.SizedElement;
 import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionContext;
 import io.github.soniex2.libtransfer.TransactionStatus;
 
 import java.util.Objects;
@@ -15,18 +17,150 @@ import java.util.concurrent.locks.Lock;
  * @author soniex2
  */
 public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference<T> {
+	private static final TransactionContext.Key<CellTransaction<?>> INSERT_KEY = new TransactionContext.Key<>();
+	private static final TransactionContext.Key<CellTransaction<?>> EXTRACT_KEY = new TransactionContext.Key<>();
+
 	private final AtomicReference<T> postInsert;
 	private final AtomicReference<T> postExtract;
 	private final AtomicBoolean valid;
 	private final Lock readLock;
+	private final StrongHolds strongHolds;
+	private final int slot;
+	private final Listener<T> listener;
 
 	public SizedElementCell(T initialValue, AtomicBoolean valid, Lock readLock) {
+		this(initialValue, valid, readLock, new StrongHolds(), -1, null);
+	}
+
+	/**
+	 * Construct a new SizedElementCell which reports its commits to the given listener.
+	 *
+	 * @param initialValue The initial value.
+	 * @param valid The validity flag shared by the holder's cells.
+	 * @param readLock The holder's read lock.
+	 * @param strongHolds The holder's strong transaction counter.
+	 * @param slot The slot this cell is in, as passed to the listener.
+	 * @param listener The listener, or {@code null}.
+	 */
+	public SizedElementCell(T initialValue, AtomicBoolean valid, Lock readLock, StrongHolds strongHolds, int slot, Listener<T> listener) {
 		// We assume the write lock is being held by the thread calling us.
 		super(Objects.requireNonNull(initialValue));
 		postInsert = new AtomicReference<>(initialValue);
 		postExtract = new AtomicReference<>(initialValue);
 		this.valid = valid;
 		this.readLock = readLock;
+		this.strongHolds = Objects.requireNonNull(strongHolds);
+		this.slot = slot;
+		this.listener = listener;
+	}
+
+	private void beginCommit() {
+		if (listener != null) {
+			listener.beginCommit();
+		}
+	}
+
+	private void endCommit() {
+		if (listener != null) {
+			listener.endCommit();
+		}
+	}
+
+	private void committing(T oldValue) {
+		if (listener != null) {
+			listener.committing(slot, oldValue);
+		}
+	}
+
+	private void committed(T oldValue, T newValue) {
+		if (listener != null) {
+			listener.committed(slot, oldValue, newValue);
+		}
+	}
+
+	private void postInsertChanged(T oldValue, T newValue) {
+		if (listener != null) {
+			listener.postInsertChanged(slot, oldValue, newValue);
+		}
+	}
+
+	private void reserved(T element, boolean insert) {
+		if (listener != null) {
+			listener.reserved(slot, element, insert);
+		}
+	}
+
+	private void released(T element, boolean insert) {
+		if (listener != null) {
+			listener.released(slot, element, insert);
+		}
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be extracted from this cell.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return How many elements of the given type could be extracted.
+	 * @see io.github.soniex2.libtransfer.SizedElementHolder#availableToExtract(int, SizedElement)
+	 */
+	public int availableToExtract(T type) {
+		T old = postExtract.get();
+		if (type.isEmpty() || old.isEmpty() || !valid.get() || !old.hasSameType(type)) {
+			return 0;
+		}
+		return old.getCount();
+	}
+
+	/**
+	 * Retrieve how many elements of the given element's type could currently be inserted into this cell.
+	 *
+	 * @param type The element whose type to look for room for.
+	 * @return How many elements of the given type could be inserted.
+	 * @see io.github.soniex2.libtransfer.SizedElementHolder#capacityFor(int, SizedElement)
+	 */
+	public int capacityFor(T type) {
+		T old = postInsert.get();
+		if (type.isEmpty() || !valid.get() || !old.hasCombinableType(type)) {
+			return 0;
+		}
+		return old.isEmpty() ? Math.min(old.getMaxCount(), type.getMaxCount()) : old.getMaxCount() - old.getCount();
+	}
+
+	/**
+	 * Retrieve what this cell would hold if all pending insertions were committed and all pending extractions reverted.
+	 *
+	 * @return The post-insert contents of this cell.
+	 */
+	T getPostInsert() {
+		return postInsert.get();
+	}
+
+	/**
+	 * Retrieve what this cell would hold if all pending extractions were committed and all pending insertions reverted.
+	 *
+	 * @return The post-extract contents of this cell.
+	 */
+	T getPostExtract() {
+		return postExtract.get();
+	}
+
+	/**
+	 * Replace the contents of this cell, without a transaction, and report it as a commit.
+	 * <p>
+	 * Only meant for filling freshly cleared cells: there must be no open transactions on this cell, and the caller
+	 * must hold the write lock.
+	 * </p>
+	 *
+	 * @param value The new contents.
+	 */
+	void reset(T value) {
+		Objects.requireNonNull(value);
+		committing(get());
+		T old = getAndSet(value);
+		postExtract.set(value);
+		T oldPostInsert = postInsert.getAndSet(value);
+		committed(old, value);
+		postInsertChanged(oldPostInsert, value);
 	}
 
 	/**
@@ -46,8 +180,58 @@ public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference
 	 * @throws NullPointerException If {@code element} is {@code null}.
 	 */
 	public Transaction<T> extract(T element, boolean strong) {
+		return extract(element, strong, null);
+	}
+
+	/**
+	 * Extract the given element(s) from this cell, reusing transaction objects from the given context.
+	 *
+	 * @param element The element(s) to extract from this cell.
+	 * @param strong Whether this is a strong transaction.
+	 * @param context The context to take transaction objects from and return them to, or {@code null}.
+	 * @return A transaction with the element(s) actually extracted.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #extract(SizedElement, boolean)
+	 * @see TransactionContext
+	 */
+	public Transaction<T> extract(T element, boolean strong, TransactionContext context) {
+		return extract(element, strong, context, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	CellTransaction<T> extract(T element, boolean strong, TransactionContext context, boolean locked) {
 		Objects.requireNonNull(element);
-		return new ExtractTransaction(element, strong);
+		ExtractTransaction<T> transaction = context == null ? null : (ExtractTransaction<T>) context.poll(EXTRACT_KEY);
+		if (transaction == null) {
+			transaction = new ExtractTransaction<>();
+		}
+		transaction.init(this, element, strong, context, locked, false);
+		return transaction;
+	}
+
+	/**
+	 * Extract the given element(s) from this cell, as a weak overcommit transaction.
+	 * <p>
+	 * Nothing is reserved, and no lock is taken, until {@link OvercommitTransaction#init()} or
+	 * {@link Transaction#commit()} is called. Until then, {@link Transaction#get()} is only what could be extracted
+	 * when the transaction was created, and reverting it costs next to nothing.
+	 * </p>
+	 *
+	 * @param element The element(s) to extract from this cell.
+	 * @param context The context to take transaction objects from and return them to, or {@code null}.
+	 * @return A transaction with the element(s) that could be extracted.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #extract(SizedElement, boolean, TransactionContext)
+	 */
+	@SuppressWarnings("unchecked")
+	public OvercommitTransaction<T> extractOvercommit(T element, TransactionContext context) {
+		Objects.requireNonNull(element);
+		ExtractTransaction<T> transaction = context == null ? null : (ExtractTransaction<T>) context.poll(EXTRACT_KEY);
+		if (transaction == null) {
+			transaction = new ExtractTransaction<>();
+		}
+		transaction.init(this, element, false, context, false, true);
+		return transaction;
 	}
 
 	/**
@@ -67,127 +251,277 @@ public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference
 	 * @throws NullPointerException If {@code element} is {@code null}.
 	 */
 	public Transaction<T> insert(T element, boolean strong) {
+		return insert(element, strong, null);
+	}
+
+	/**
+	 * Insert the given element(s) into this cell, reusing transaction objects from the given context.
+	 *
+	 * @param element The element(s) to insert into this cell.
+	 * @param strong Whether this is a strong transaction.
+	 * @param context The context to take transaction objects from and return them to, or {@code null}.
+	 * @return A transaction with the element(s) actually inserted.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #insert(SizedElement, boolean)
+	 * @see TransactionContext
+	 */
+	public Transaction<T> insert(T element, boolean strong, TransactionContext context) {
+		return insert(element, strong, context, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	CellTransaction<T> insert(T element, boolean strong, TransactionContext context, boolean locked) {
 		Objects.requireNonNull(element);
-		return new InsertTransaction(element, strong);
+		InsertTransaction<T> transaction = context == null ? null : (InsertTransaction<T>) context.poll(INSERT_KEY);
+		if (transaction == null) {
+			transaction = new InsertTransaction<>();
+		}
+		transaction.init(this, element, strong, context, locked, false);
+		return transaction;
 	}
 
-	private class InsertTransaction implements Transaction<T> {
-		private final T transactionSize;
-		private TransactionStatus status = TransactionStatus.OPEN;
-		private boolean strong;
+	/**
+	 * Insert the given element(s) into this cell, as a weak overcommit transaction.
+	 *
+	 * @param element The element(s) to insert into this cell.
+	 * @param context The context to take transaction objects from and return them to, or {@code null}.
+	 * @return A transaction with the element(s) that could be inserted.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #extractOvercommit(SizedElement, TransactionContext)
+	 */
+	@SuppressWarnings("unchecked")
+	public OvercommitTransaction<T> insertOvercommit(T element, TransactionContext context) {
+		Objects.requireNonNull(element);
+		InsertTransaction<T> transaction = context == null ? null : (InsertTransaction<T>) context.poll(INSERT_KEY);
+		if (transaction == null) {
+			transaction = new InsertTransaction<>();
+		}
+		transaction.init(this, element, false, context, false, true);
+		return transaction;
+	}
 
-		InsertTransaction(T element, boolean strong) {
-			if (strong) {
+	/**
+	 * Common parts of insert and extract transactions.
+	 * <p>
+	 * Transactions are reusable: once committed or reverted, they go back to the context they came from, if any.
+	 * Empty transactions never touch the lock.
+	 * </p>
+	 * <p>
+	 * Callers already holding the read lock can pass {@code locked} to skip taking it again.
+	 * </p>
+	 * <p>
+	 * Strong transactions take a hold on the holder's {@link StrongHolds}, rather than on the read lock, so they can
+	 * be committed or reverted from any thread.
+	 * </p>
+	 * <p>
+	 * Overcommit transactions start out pending: {@link #transactionSize} is only a peek at what could be reserved,
+	 * and the reservation is made by {@link #init()}, or by {@link #commit()}, which then fails rather than commit
+	 * anything other than what was peeked.
+	 * </p>
+	 */
+	static abstract class CellTransaction<T extends SizedElement<T>> implements OvercommitTransaction<T> {
+		SizedElementCell<T> cell;
+		T transactionSize;
+		private TransactionContext context;
+		private TransactionStatus status;
+		private boolean strong;
+		private boolean pending;
+
+		void init(SizedElementCell<T> cell, T element, boolean strong, TransactionContext context, boolean locked, boolean overcommit) {
+			this.cell = cell;
+			this.context = context;
+			this.status = TransactionStatus.OPEN;
+			Lock readLock = cell.readLock;
+			this.strong = strong && cell.strongHolds.tryAcquire();
+			if (element.isEmpty()) {
+				transactionSize = element;
+				pending = false;
+				return;
+			}
+			if (overcommit) {
+				transactionSize = cell.valid.get() ? peek(element) : element.withCount(0);
+				pending = !transactionSize.isEmpty();
+				return;
+			}
+			pending = false;
+			if (!locked) {
 				readLock.lock();
 			}
-			this.strong = strong;
-			readLock.lock();
 			try {
-				if (!valid.get() || element.isEmpty()) {
-					transactionSize = element.isEmpty() ? element : element.withCount(0);
-				} else {
-					T old, tmp, diff;
-					do {
-						old = postInsert.get();
-						if (!old.hasCombinableType(element)) {
-							diff = element.withCount(0);
-							break;
-						}
-						tmp = old.combine(diff = element.withCount(Math.min(element.getCount(), old.getMaxCount() - old.getCount())));
-					} while (!postInsert.compareAndSet(old, tmp));
-					transactionSize = diff;
+				transactionSize = cell.valid.get() ? reserve(element) : element.withCount(0);
+				if (!transactionSize.isEmpty()) {
+					cell.reserved(transactionSize, inserting());
 				}
 			} catch (RuntimeException | Error e) {
-				if (strong) {
-					readLock.unlock();
+				if (this.strong) {
+					cell.strongHolds.release();
 				}
+				this.cell = null;
 				throw e;
 			} finally {
-				readLock.unlock();
+				if (!locked) {
+					readLock.unlock();
+				}
 			}
 		}
 
-		@Override
-		public T get() {
-			return transactionSize;
+		/**
+		 * Reserve space for the given non-empty element(s), with the read lock held.
+		 *
+		 * @param element The element(s).
+		 * @return The element(s) actually reserved.
+		 */
+		abstract T reserve(T element);
+
+		/**
+		 * Retrieve what {@link #reserve(SizedElement)} would currently reserve for the given non-empty element(s),
+		 * without reserving it.
+		 *
+		 * @param element The element(s).
+		 * @return The element(s) that could be reserved.
+		 */
+		abstract T peek(T element);
+
+		/**
+		 * Make the pending reservation, with the read lock held.
+		 *
+		 * @return The element(s) actually reserved, which may be less than what was peeked.
+		 */
+		private T reservePending() {
+			pending = false;
+			T reserved = cell.valid.get() ? reserve(transactionSize) : transactionSize.withCount(0);
+			if (!reserved.isEmpty()) {
+				cell.reserved(reserved, inserting());
+			}
+			return reserved;
 		}
 
 		@Override
-		public boolean commit() {
-			readLock.lock();
-			if (!getStatus().canConfirm()) {
-				readLock.unlock();
+		public void init() {
+			if (getStatus() != TransactionStatus.OPEN) {
 				throw new IllegalStateException();
 			}
+			if (!pending) {
+				return;
+			}
+			Lock readLock = cell.readLock;
+			readLock.lock();
 			try {
-				if (transactionSize.isEmpty()) {
-					status = TransactionStatus.CONFIRMED;
-					return true;
-				}
-				T old, tmp;
-				// first, do the actual amount, then do postExtract.
-				// otherwise, you could extract items before they're even inserted, and overflow the actual amount.
-				do {
-					old = SizedElementCell.this.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.combine(transactionSize);
-				} while (!SizedElementCell.this.compareAndSet(old, tmp));
-
-				do {
-					old = postExtract.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.combine(transactionSize);
-				} while (!postExtract.compareAndSet(old, tmp));
-
-				status = TransactionStatus.CONFIRMED;
-
-				return true;
+				transactionSize = reservePending();
 			} finally {
 				readLock.unlock();
-				if (strong) {
-					readLock.unlock();
-				}
 			}
 		}
 
+		/**
+		 * Apply this non-empty transaction, with the read lock held.
+		 */
+		abstract void doCommit();
+
+		/**
+		 * Undo this non-empty transaction's reservation, with the read lock held.
+		 */
+		abstract void doRevert();
+
+		abstract TransactionContext.Key<CellTransaction<?>> key();
+
+		abstract boolean inserting();
+
+		@Override
+		public T get() {
+			return transactionSize;
+		}
+
+		@Override
+		public boolean commit() {
+			return finish(true, false);
+		}
+
 		@Override
 		public boolean revert() {
-			readLock.lock();
-			if (!getStatus().canRevert()) {
-				readLock.unlock();
+			return finish(false, false);
+		}
+
+		/**
+		 * Commit or revert this transaction.
+		 *
+		 * @param commit Whether to commit, rather than revert.
+		 * @param locked Whether the caller already holds the read lock.
+		 * @return Whether it could be done. Only pending transactions can fail to commit, and are then reverted.
+		 */
+		boolean finish(boolean commit, boolean locked) {
+			Lock readLock = cell.readLock;
+			// empty transactions have nothing to do, and nothing to lock. neither do pending ones being reverted.
+			boolean lock = !locked && !transactionSize.isEmpty() && (commit || !pending);
+			if (lock) {
+				readLock.lock();
+			}
+			if (!(commit ? getStatus().canConfirm() : getStatus().canRevert())) {
+				if (lock) {
+					readLock.unlock();
+				}
 				throw new IllegalStateException();
 			}
+			boolean done = true;
+			// reverts don't change the committed contents, so only commits are announced.
+			boolean announced = commit && !transactionSize.isEmpty();
+			if (announced) {
+				cell.beginCommit();
+			}
 			try {
-				if (transactionSize.isEmpty()) {
-					status = TransactionStatus.REVERTED;
-					return true;
+				boolean reserved = !pending;
+				if (pending) {
+					pending = false;
+					if (commit) {
+						T peeked = transactionSize;
+						transactionSize = reservePending();
+						reserved = true;
+						// couldn't get what was peeked, so undo whatever we did get.
+						done = transactionSize.getCount() == peeked.getCount();
+					}
+				}
+				if (reserved && !transactionSize.isEmpty()) {
+					apply(commit && done);
+					cell.released(transactionSize, inserting());
 				}
-				T old, tmp;
-
-				do {
-					old = postInsert.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.split(transactionSize);
-				} while (!postInsert.compareAndSet(old, tmp));
-
-				status = TransactionStatus.REVERTED;
-
-				return true;
 			} finally {
-				readLock.unlock();
-				if (strong) { // lock is reentrant
+				if (announced) {
+					cell.endCommit();
+				}
+				if (lock) {
 					readLock.unlock();
 				}
+				if (strong) {
+					strong = false;
+					cell.strongHolds.release();
+				}
+			}
+			status = commit && done ? TransactionStatus.CONFIRMED : TransactionStatus.REVERTED;
+			if (context != null) {
+				TransactionContext context = this.context;
+				this.cell = null;
+				this.transactionSize = null;
+				this.context = null;
+				context.recycle(key(), this);
+			}
+			return done;
+		}
+
+		private void apply(boolean commit) {
+			if (commit) {
+				doCommit();
+			} else {
+				doRevert();
 			}
 		}
 
 		@Override
 		public TransactionStatus getStatus() {
-			if (status == TransactionStatus.OPEN && !valid.get()) {
+			if (status == TransactionStatus.OPEN && !cell.valid.get()) {
 				status = TransactionStatus.INVALIDATED;
 				if (strong) {
 					strong = false;
-					readLock.unlock();
+					cell.strongHolds.release();
 				}
 			}
 			return status;
@@ -200,10 +534,13 @@ public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference
 
 		@Override
 		public void makeStrong() {
-			if (!strong && getStatus() == TransactionStatus.OPEN) {
-				readLock.lock();
+			// overcommit isn't available for strong transactions.
+			if (pending && getStatus() == TransactionStatus.OPEN) {
+				init();
+			}
+			if (!strong && getStatus() == TransactionStatus.OPEN && cell.strongHolds.tryAcquire()) {
 				if (getStatus() != TransactionStatus.OPEN) {
-					readLock.unlock();
+					cell.strongHolds.release();
 				} else {
 					strong = true;
 				}
@@ -213,7 +550,7 @@ public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference
 		@Override
 		public void makeWeak() {
 			if (strong && getStatus() == TransactionStatus.OPEN) {
-				readLock.unlock();
+				cell.strongHolds.release();
 				strong = false;
 			}
 		}
@@ -224,156 +561,216 @@ public class SizedElementCell<T extends SizedElement<T>> extends AtomicReference
 		}
 	}
 
-	private class ExtractTransaction implements Transaction<T> {
-		private final T transactionSize;
-		private TransactionStatus status = TransactionStatus.OPEN;
-		private boolean strong;
-
-		ExtractTransaction(T element, boolean strong) {
-			readLock.lock();
-			if (strong) {
-				readLock.lock();
-			}
-			this.strong = strong;
-			try {
-				if (!valid.get() || element.isEmpty()) {
-					transactionSize = element.withCount(0);
-				} else {
-					T old, tmp, diff;
-					do {
-						old = postExtract.get();
-						if (!old.hasCombinableType(element)) {
-							diff = element.withCount(0);
-							break;
-						}
-						tmp = old.split(diff = element.withCount(Math.min(element.getCount(), old.getCount())));
-					} while (!postExtract.compareAndSet(old, tmp));
-					transactionSize = diff;
-				}
-			} catch (RuntimeException | Error e) {
-				if (strong) {
-					readLock.unlock();
+	private static final class InsertTransaction<T extends SizedElement<T>> extends CellTransaction<T> {
+		@Override
+		T reserve(T element) {
+			AtomicReference<T> postInsert = cell.postInsert;
+			T old, tmp, diff;
+			do {
+				old = postInsert.get();
+				if (!old.hasCombinableType(element)) {
+					return element.withCount(0);
 				}
-				throw e;
-			} finally {
-				readLock.unlock();
-			}
+				tmp = old.combine(diff = element.withCount(Math.min(element.getCount(), old.getMaxCount() - old.getCount())));
+			} while (!postInsert.compareAndSet(old, tmp));
+			cell.postInsertChanged(old, tmp);
+			return diff;
 		}
 
 		@Override
-		public T get() {
-			return transactionSize;
+		T peek(T element) {
+			T old = cell.postInsert.get();
+			if (!old.hasCombinableType(element)) {
+				return element.withCount(0);
+			}
+			return element.withCount(Math.min(element.getCount(), old.getMaxCount() - old.getCount()));
 		}
 
 		@Override
-		public boolean commit() {
-			readLock.lock();
-			if (!getStatus().canConfirm()) {
-				readLock.unlock();
-				throw new IllegalStateException();
-			}
-			try {
-				if (transactionSize.isEmpty()) {
-					status = TransactionStatus.CONFIRMED;
-					return true;
-				}
-				T old, tmp;
-				// first, do the actual amount, then do postInsert.
-				// otherwise, you could insert items before they're even extracted, and overflow the actual amount.
-				do {
-					old = SizedElementCell.this.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.split(transactionSize);
-				} while (!SizedElementCell.this.compareAndSet(old, tmp));
-
-				do {
-					old = postInsert.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.split(transactionSize);
-				} while (!postInsert.compareAndSet(old, tmp));
-
-				status = TransactionStatus.CONFIRMED;
-
-				return true;
-			} finally {
-				readLock.unlock();
-				if (strong) {
-					readLock.unlock();
-				}
-			}
+		void doCommit() {
+			T old, tmp;
+			// first, do the actual amount, then do postExtract.
+			// otherwise, you could extract items before they're even inserted, and overflow the actual amount.
+			do {
+				old = cell.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.combine(transactionSize);
+				cell.committing(old);
+			} while (!cell.compareAndSet(old, tmp));
+			cell.committed(old, tmp);
+
+			do {
+				old = cell.postExtract.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.combine(transactionSize);
+			} while (!cell.postExtract.compareAndSet(old, tmp));
 		}
 
 		@Override
-		public boolean revert() {
-			readLock.lock();
-			if (!getStatus().canRevert()) {
-				readLock.unlock();
-				throw new IllegalStateException();
-			}
-			try {
-				if (transactionSize.isEmpty()) {
-					status = TransactionStatus.REVERTED;
-					return true;
-				}
-				T old, tmp;
+		void doRevert() {
+			T old, tmp;
+			do {
+				old = cell.postInsert.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.split(transactionSize);
+			} while (!cell.postInsert.compareAndSet(old, tmp));
+			cell.postInsertChanged(old, tmp);
+		}
 
-				do {
-					old = postExtract.get();
-					assert old.hasCombinableType(transactionSize);
-					tmp = old.combine(transactionSize);
-				} while (!postExtract.compareAndSet(old, tmp));
+		@Override
+		TransactionContext.Key<CellTransaction<?>> key() {
+			return INSERT_KEY;
+		}
 
-				status = TransactionStatus.REVERTED;
+		@Override
+		boolean inserting() {
+			return true;
+		}
+	}
 
-				return true;
-			} finally {
-				readLock.unlock();
-				if (strong) { // lock is reentrant
-					readLock.unlock();
+	private static final class ExtractTransaction<T extends SizedElement<T>> extends CellTransaction<T> {
+		@Override
+		T reserve(T element) {
+			AtomicReference<T> postExtract = cell.postExtract;
+			T old, tmp, diff;
+			do {
+				old = postExtract.get();
+				if (!old.hasCombinableType(element)) {
+					return element.withCount(0);
 				}
-			}
+				tmp = old.split(diff = element.withCount(Math.min(element.getCount(), old.getCount())));
+			} while (!postExtract.compareAndSet(old, tmp));
+			return diff;
 		}
 
 		@Override
-		public TransactionStatus getStatus() {
-			if (status == TransactionStatus.OPEN && !valid.get()) {
-				status = TransactionStatus.INVALIDATED;
-				if (strong) {
-					strong = false;
-					readLock.unlock();
-				}
+		T peek(T element) {
+			T old = cell.postExtract.get();
+			if (!old.hasCombinableType(element)) {
+				return element.withCount(0);
 			}
-			return status;
+			return element.withCount(Math.min(element.getCount(), old.getCount()));
 		}
 
 		@Override
-		public boolean isStrong() {
-			return strong;
+		void doCommit() {
+			T old, tmp;
+			// first, do the actual amount, then do postInsert.
+			// otherwise, you could insert items before they're even extracted, and overflow the actual amount.
+			do {
+				old = cell.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.split(transactionSize);
+				cell.committing(old);
+			} while (!cell.compareAndSet(old, tmp));
+			cell.committed(old, tmp);
+
+			do {
+				old = cell.postInsert.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.split(transactionSize);
+			} while (!cell.postInsert.compareAndSet(old, tmp));
+			cell.postInsertChanged(old, tmp);
 		}
 
 		@Override
-		public void makeStrong() {
-			if (!strong && getStatus() == TransactionStatus.OPEN) {
-				readLock.lock();
-				if (getStatus() != TransactionStatus.OPEN) {
-					readLock.unlock();
-				} else {
-					strong = true;
-				}
-			}
+		void doRevert() {
+			T old, tmp;
+			do {
+				old = cell.postExtract.get();
+				assert old.hasCombinableType(transactionSize);
+				tmp = old.combine(transactionSize);
+			} while (!cell.postExtract.compareAndSet(old, tmp));
 		}
 
 		@Override
-		public void makeWeak() {
-			if (strong && getStatus() == TransactionStatus.OPEN) {
-				readLock.unlock();
-				strong = false;
-			}
+		TransactionContext.Key<CellTransaction<?>> key() {
+			return EXTRACT_KEY;
 		}
 
 		@Override
-		public boolean isConcurrent() {
-			return true;
+		boolean inserting() {
+			return false;
+		}
+	}
+
+	/**
+	 * Listens for commits and reservations on a cell.
+	 */
+	public interface Listener<T extends SizedElement<T>> {
+		/**
+		 * Called after a transaction changed a cell's committed contents, with the read lock held.
+		 * <p>
+		 * Concurrent commits on the same cell may be reported out of order.
+		 * </p>
+		 *
+		 * @param slot The cell's slot.
+		 * @param oldValue The cell's previous contents.
+		 * @param newValue The cell's new contents.
+		 */
+		void committed(int slot, T oldValue, T newValue);
+
+		/**
+		 * Called before a transaction starts committing on a cell, with the read lock held. Each call is followed by
+		 * a call to {@link #endCommit()} on the same thread, once the commit is done, even if it failed. Calls may nest.
+		 */
+		default void beginCommit() {
+		}
+
+		/**
+		 * Called after a transaction is done committing on a cell, with the read lock held.
+		 *
+		 * @see #beginCommit()
+		 */
+		default void endCommit() {
+		}
+
+		/**
+		 * Called right before a transaction tries to change a cell's committed contents, with the read lock held.
+		 * <p>
+		 * May be called more than once per commit, if it races with other commits on the same cell, but the first
+		 * successful change is always preceded by a call with the contents it changes from.
+		 * </p>
+		 *
+		 * @param slot The cell's slot.
+		 * @param oldValue The cell's current contents.
+		 */
+		default void committing(int slot, T oldValue) {
+		}
+
+		/**
+		 * Called after a cell's post-insert contents changed, that is, how much room is left for insertions, with
+		 * the read lock held.
+		 * <p>
+		 * Concurrent changes on the same cell may be reported out of order.
+		 * </p>
+		 *
+		 * @param slot The cell's slot.
+		 * @param oldValue The cell's previous post-insert contents.
+		 * @param newValue The cell's new post-insert contents.
+		 */
+		default void postInsertChanged(int slot, T oldValue, T newValue) {
+		}
+
+		/**
+		 * Called after a transaction reserved element(s) on a cell, with the read lock held.
+		 *
+		 * @param slot The cell's slot.
+		 * @param element The non-empty element(s) reserved.
+		 * @param insert Whether the transaction is an insertion, rather than an extraction.
+		 */
+		default void reserved(int slot, T element, boolean insert) {
+		}
+
+		/**
+		 * Called after a transaction which {@link #reserved(int, SizedElement, boolean) reserved} element(s) was
+		 * committed or reverted, with the read lock held. Transactions which get invalidated are never released.
+		 *
+		 * @param slot The cell's slot.
+		 * @param element The non-empty element(s) which were reserved.
+		 * @param insert Whether the transaction is an insertion, rather than an extraction.
+		 */
+		default void released(int slot, T element, boolean insert) {
 		}
 	}
 }
@@ -1,28 +1,109 @@
 package io.github.soniex2.libtransfer.impl;
 
+import io.github.soniex2.libtransfer.CompositeTransaction;
+import io.github.soniex2.libtransfer.CountingSizedElementHolder;
+import io.github.soniex2.libtransfer.HolderOrdinals;
+import io.github.soniex2.libtransfer.OvercommitTransaction;
 import io.github.soniex2.libtransfer.SizedElement;
-import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.SizedElementSnapshot;
+import io.github.soniex2.libtransfer.SnapshottingSizedElementHolder;
 import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionContext;
 
+import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
  * @author soniex2
  */
-public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedElementHolder<T> {
+public class SizedElementHolderImpl<T extends SizedElement<T>> implements CountingSizedElementHolder<T>, SnapshottingSizedElementHolder<T> {
 
-	private final ReadWriteLock rwlock = new ReentrantReadWriteLock(true);
+	private final ReadWriteLock rwlock;
+	private final StrongHolds strongHolds = new StrongHolds();
+	private final long ordinal = HolderOrdinals.next();
 	private final Supplier<T> emptyFactory;
 	// For use with getSlotLimit only!
 	private final T empty;
+	private final Function<? super T, ?> typeKey;
+	// Registered snapshots, which commits must preserve slots for.
+	private final CopyOnWriteArrayList<CopyOnWriteSnapshot<T>> snapshots = new CopyOnWriteArrayList<>();
+	// Commits take the read lock, snapshots the write lock, so no commit straddles a snapshot being registered.
+	private final StripedReadWriteLock commitGate = new StripedReadWriteLock();
+	private final Compaction<T> compaction = new Compaction<>(this);
+
+	private final SizedElementCell.Listener<T> listener = new SizedElementCell.Listener<T>() {
+		@Override
+		public void beginCommit() {
+			commitGate.readLock().lock();
+		}
+
+		@Override
+		public void endCommit() {
+			commitGate.readLock().unlock();
+		}
+
+		@Override
+		public void committing(int slot, T oldValue) {
+			if (!snapshots.isEmpty()) {
+				for (CopyOnWriteSnapshot<T> snapshot : snapshots) {
+					snapshot.preserve(slot, oldValue);
+				}
+			}
+		}
+
+		@Override
+		public void committed(int slot, T oldValue, T newValue) {
+			TypeTotals<T> totals = SizedElementHolderImpl.this.totals;
+			if (totals != null) {
+				totals.committed(oldValue, newValue);
+			}
+			slotCommitted(slot, oldValue, newValue);
+			SlotChangePublisher<T> changes = SizedElementHolderImpl.this.changes;
+			if (changes != null) {
+				changes.changed(slot, oldValue);
+			}
+		}
+
+		@Override
+		public void postInsertChanged(int slot, T oldValue, T newValue) {
+			slotPostInsertChanged(slot, oldValue, newValue);
+		}
+
+		@Override
+		public void reserved(int slot, T element, boolean insert) {
+			TypeTotals<T> totals = SizedElementHolderImpl.this.totals;
+			if (totals != null) {
+				totals.reserved(element, insert, 1);
+			}
+		}
+
+		@Override
+		public void released(int slot, T element, boolean insert) {
+			TypeTotals<T> totals = SizedElementHolderImpl.this.totals;
+			if (totals != null) {
+				totals.reserved(element, insert, -1);
+			}
+		}
+	};
 
 	private volatile AtomicReferenceArray<SizedElementCell<T>> array;
 	private volatile AtomicBoolean valid;
+	// Only kept if we have a type key.
+	private volatile TypeTotals<T> totals;
+	// Only created once asked for.
+	private volatile SlotChangePublisher<T> changes;
+	// Only set if transactions are leased.
+	private volatile UnaryOperator<Transaction<T>> lease;
 
 	/**
 	 * Construct a new SizedElementHolderImpl with the given size and empty element factory.
@@ -34,6 +115,45 @@ public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedE
 	 * @param emptyFactory The empty element factory.
 	 */
 	public SizedElementHolderImpl(int size, Supplier<T> emptyFactory) {
+		this(size, emptyFactory, new ReentrantReadWriteLock(true));
+	}
+
+	/**
+	 * Construct a new SizedElementHolderImpl with the given size, empty element factory and lock.
+	 * <p>
+	 * The empty element factory must not return null!
+	 * </p>
+	 * <p>
+	 * The lock must be reentrant, and let the write lock holder take the read lock. Every transaction takes the read
+	 * lock, so for heavily concurrent holders, consider a {@link StripedReadWriteLock}.
+	 * </p>
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 * @param rwlock The lock guarding {@link #invalidate()} and {@link #clearAndResize(int)}.
+	 */
+	public SizedElementHolderImpl(int size, Supplier<T> emptyFactory, ReadWriteLock rwlock) {
+		this(size, emptyFactory, rwlock, null);
+	}
+
+	/**
+	 * Construct a new SizedElementHolderImpl with the given size, empty element factory, lock and type key function.
+	 * <p>
+	 * With a type key function, this holder keeps per-type totals as transactions happen, so
+	 * {@link #countOf(SizedElement)} and friends don't have to scan every slot. Type keys must have the same
+	 * {@code equals}/{@code hashCode} if and only if the elements {@link SizedElement#hasSameType(SizedElement) have
+	 * the same type}.
+	 * </p>
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 * @param rwlock The lock guarding {@link #invalidate()} and {@link #clearAndResize(int)}.
+	 * @param typeKey The type key function, or {@code null} to not keep totals. Only called with non-empty elements.
+	 * @see #SizedElementHolderImpl(int, Supplier, ReadWriteLock)
+	 */
+	public SizedElementHolderImpl(int size, Supplier<T> emptyFactory, ReadWriteLock rwlock, Function<? super T, ?> typeKey) {
+		this.typeKey = typeKey;
+		this.rwlock = Objects.requireNonNull(rwlock, "Lock must not be null");
 		this.emptyFactory = Objects.requireNonNull(emptyFactory, "Factory must not be null");
 		empty = Objects.requireNonNull(emptyFactory.get(), "Empty instance must not be null");
 		clearAndResize(size);
@@ -47,10 +167,24 @@ public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedE
 
 	@Override
 	public Transaction<T> extract(int slot, T element, boolean strong) {
+		return extract0(slot, element, strong, null);
+	}
+
+	@Override
+	public Transaction<T> extract(int slot, T element, boolean strong, TransactionContext context) {
+		return extract0(slot, element, strong, Objects.requireNonNull(context));
+	}
+
+	private Transaction<T> extract0(int slot, T element, boolean strong, TransactionContext context) {
 		Objects.requireNonNull(element);
 		rwlock.readLock().lock();
 		try {
-			return array.get(slot).extract(element, strong);
+			UnaryOperator<Transaction<T>> lease = this.lease;
+			if (lease != null) {
+				// leased transactions may be reverted from another thread, so they can't come from a context.
+				return lease.apply(array.get(slot).extract(element, strong, null));
+			}
+			return array.get(slot).extract(element, strong, context);
 		} finally {
 			rwlock.readLock().unlock();
 		}
@@ -58,20 +192,326 @@ public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedE
 
 	@Override
 	public Transaction<T> insert(int slot, T element, boolean strong) {
+		return insert0(slot, element, strong, null);
+	}
+
+	@Override
+	public Transaction<T> insert(int slot, T element, boolean strong, TransactionContext context) {
+		return insert0(slot, element, strong, Objects.requireNonNull(context));
+	}
+
+	private Transaction<T> insert0(int slot, T element, boolean strong, TransactionContext context) {
 		Objects.requireNonNull(element);
 		rwlock.readLock().lock();
 		try {
-			return array.get(slot).insert(element, strong);
+			UnaryOperator<Transaction<T>> lease = this.lease;
+			if (lease != null) {
+				return lease.apply(array.get(slot).insert(element, strong, null));
+			}
+			return array.get(slot).insert(element, strong, context);
 		} finally {
 			rwlock.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Extract the given element(s) from the given slot, as a weak overcommit transaction.
+	 * <p>
+	 * This only peeks at the slot: no lock is taken and nothing is reserved until {@link OvercommitTransaction#init()}
+	 * or {@link Transaction#commit()} is called, so speculative transactions which mostly end up reverted cost next to
+	 * nothing. Until then, other transactions may take what was peeked, in which case committing fails.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to extract from the given slot.
+	 * @return A transaction with the element(s) that could be extracted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see SizedElementCell#extractOvercommit(SizedElement, TransactionContext)
+	 */
+	public OvercommitTransaction<T> extractOvercommit(int slot, T element) {
+		return array.get(slot).extractOvercommit(element, null);
+	}
+
+	/**
+	 * Extract the given element(s) from the given slot, as a weak overcommit transaction, reusing transaction objects
+	 * from the given context.
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to extract from the given slot.
+	 * @param context The context to take transaction objects from and return them to.
+	 * @return A transaction with the element(s) that could be extracted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} or {@code context} is {@code null}.
+	 * @see #extractOvercommit(int, SizedElement)
+	 */
+	public OvercommitTransaction<T> extractOvercommit(int slot, T element, TransactionContext context) {
+		return array.get(slot).extractOvercommit(element, Objects.requireNonNull(context));
+	}
+
+	/**
+	 * Insert the given element(s) into the given slot, as a weak overcommit transaction.
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to insert into the given slot.
+	 * @return A transaction with the element(s) that could be inserted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} is {@code null}.
+	 * @see #extractOvercommit(int, SizedElement)
+	 */
+	public OvercommitTransaction<T> insertOvercommit(int slot, T element) {
+		return array.get(slot).insertOvercommit(element, null);
+	}
+
+	/**
+	 * Insert the given element(s) into the given slot, as a weak overcommit transaction, reusing transaction objects
+	 * from the given context.
+	 *
+	 * @param slot The slot.
+	 * @param element The element(s) to insert into the given slot.
+	 * @param context The context to take transaction objects from and return them to.
+	 * @return A transaction with the element(s) that could be inserted.
+	 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+	 * @throws NullPointerException If {@code element} or {@code context} is {@code null}.
+	 * @see #extractOvercommit(int, SizedElement)
+	 */
+	public OvercommitTransaction<T> insertOvercommit(int slot, T element, TransactionContext context) {
+		return array.get(slot).insertOvercommit(element, Objects.requireNonNull(context));
+	}
+
+	@Override
+	public Transaction<T> extractBulk(int[] slots, T element, boolean strong) {
+		return bulk(Objects.requireNonNull(slots), 0, 0, element, strong, false);
+	}
+
+	@Override
+	public Transaction<T> extractBulk(int fromSlot, int toSlot, T element, boolean strong) {
+		return bulk(null, fromSlot, toSlot, element, strong, false);
+	}
+
+	@Override
+	public Transaction<T> insertBulk(int[] slots, T element, boolean strong) {
+		return bulk(Objects.requireNonNull(slots), 0, 0, element, strong, true);
+	}
+
+	@Override
+	public Transaction<T> insertBulk(int fromSlot, int toSlot, T element, boolean strong) {
+		return bulk(null, fromSlot, toSlot, element, strong, true);
+	}
+
+	private Transaction<T> bulk(int[] slots, int fromSlot, int toSlot, T element, boolean strong, boolean insert) {
+		Objects.requireNonNull(element);
+		Lock readLock = rwlock.readLock();
+		// take the lock once for the whole thing, rather than once per slot.
+		readLock.lock();
+		try {
+			AtomicReferenceArray<SizedElementCell<T>> array = this.array;
+			if (slots == null && (fromSlot < 0 || fromSlot > toSlot || toSlot > array.length())) {
+				throw new IndexOutOfBoundsException("range [" + fromSlot + ", " + toSlot + ")");
+			}
+			BulkTransaction<T> bulk = new BulkTransaction<>(element.withCount(0), readLock, commitGate.readLock());
+			CompositeTransaction.SlotOperation<T> operation = insert ? (slot, left) -> array.get(slot).insert(left, strong, null, true)
+					: (slot, left) -> array.get(slot).extract(left, strong, null, true);
+			Transaction<T> transaction = slots == null ? CompositeTransaction.collectRange(bulk, fromSlot, toSlot, element, operation)
+					: CompositeTransaction.collectSlots(bulk, slots, element, operation);
+			UnaryOperator<Transaction<T>> lease = this.lease;
+			return lease == null ? transaction : lease.apply(transaction);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public int availableToExtract(int slot, T type) {
+		return array.get(slot).availableToExtract(type);
+	}
+
+	@Override
+	public int capacityFor(int slot, T type) {
+		return array.get(slot).capacityFor(type);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Without a type key function, this scans every slot.
+	 * </p>
+	 */
+	@Override
+	public long countOf(T type) {
+		TypeTotals<T> totals = this.totals;
+		if (totals != null) {
+			return totals.getCommitted(type);
+		}
+		long total = 0;
+		AtomicReferenceArray<SizedElementCell<T>> array = this.array;
+		for (int i = 0; i < array.length(); i++) {
+			T value = array.get(i).get();
+			if (!type.isEmpty() && !value.isEmpty() && value.hasSameType(type)) {
+				total += value.getCount();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Without a type key function, this scans every slot.
+	 * </p>
+	 */
+	@Override
+	public long reservedForInsert(T type) {
+		TypeTotals<T> totals = this.totals;
+		if (totals != null) {
+			return totals.getReservedIn(type);
+		}
+		long total = 0;
+		AtomicReferenceArray<SizedElementCell<T>> array = this.array;
+		for (int i = 0; i < array.length(); i++) {
+			SizedElementCell<T> cell = array.get(i);
+			// read postInsert last: it only grows past the committed contents.
+			T value = cell.get();
+			T postInsert = cell.getPostInsert();
+			if (!type.isEmpty() && !postInsert.isEmpty() && postInsert.hasSameType(type)) {
+				total += Math.max(0, postInsert.getCount() - (value.isEmpty() ? 0 : value.getCount()));
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Without a type key function, this scans every slot.
+	 * </p>
+	 */
+	@Override
+	public long reservedForExtract(T type) {
+		TypeTotals<T> totals = this.totals;
+		if (totals != null) {
+			return totals.getReservedOut(type);
+		}
+		long total = 0;
+		AtomicReferenceArray<SizedElementCell<T>> array = this.array;
+		for (int i = 0; i < array.length(); i++) {
+			SizedElementCell<T> cell = array.get(i);
+			T postExtract = cell.getPostExtract();
+			T value = cell.get();
+			if (!type.isEmpty() && !value.isEmpty() && value.hasSameType(type)) {
+				total += Math.max(0, value.getCount() - (postExtract.isEmpty() ? 0 : postExtract.getCount()));
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This doesn't take the write lock, so it never waits for, or holds up, insertions, extractions or reverts.
+	 * Registering the snapshot waits for commits already in progress, and commits which start meanwhile wait for it,
+	 * but only for as long as those commits take; nothing waits while the snapshot is read. From then on, until every
+	 * slot of the snapshot has been read, or it's closed, commits copy what they change into it. Each
+	 * {@link #extractBulk(int[], SizedElement, boolean) bulk transaction} is committed as a unit, as far as snapshots
+	 * are concerned.
+	 * </p>
+	 */
+	@Override
+	public SizedElementSnapshot<T> snapshot() {
+		// keep clearAndResize() out, so the snapshot is registered for the cells it's taken from.
+		rwlock.readLock().lock();
+		try {
+			commitGate.writeLock().lock();
+			try {
+				CopyOnWriteSnapshot<T> snapshot = new CopyOnWriteSnapshot<>(array, snapshots::remove);
+				if (snapshot.getSlots() != 0) {
+					snapshots.add(snapshot);
+				}
+				return snapshot;
+			} finally {
+				commitGate.writeLock().unlock();
+			}
+		} finally {
+			rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Retrieve the publisher of this holder's slot changes, creating it if needed.
+	 * <p>
+	 * Batches are put together and delivered on the common {@link ForkJoinPool}. Until there's a subscriber, commits
+	 * don't do anything extra.
+	 * </p>
+	 *
+	 * @return The publisher.
+	 */
+	public SlotChangePublisher<T> changes() {
+		SlotChangePublisher<T> changes = this.changes;
+		if (changes == null) {
+			synchronized (this) {
+				changes = this.changes;
+				if (changes == null) {
+					changes = this.changes = new SlotChangePublisher<>(this::get, ForkJoinPool.commonPool());
+				}
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Lease every transaction made from now on, so it's reverted if it's left open for longer than the given time.
+	 * <p>
+	 * Leased transactions don't come from {@link TransactionContext}s, even if one is given. Overcommit transactions
+	 * aren't leased.
+	 * </p>
+	 *
+	 * @param leases The leases to use, or {@code null} to stop leasing transactions.
+	 * @param timeoutMillis How long transactions may stay open, in milliseconds.
+	 * @see TransactionLeases
+	 */
+	public void leaseTransactions(TransactionLeases leases, long timeoutMillis) {
+		this.lease = leases == null ? null : transaction -> leases.lease(transaction, timeoutMillis);
+	}
+
+	/**
+	 * Merge partial stacks of the same type, going over every slot once.
+	 *
+	 * @return How many slots were emptied.
+	 * @see #compact(int, long)
+	 */
+	public int compact() {
+		return compact(getSlots(), Long.MAX_VALUE);
+	}
+
+	/**
+	 * Merge partial stacks of the same type, going over at most the given number of slots, for at most the given time.
+	 * <p>
+	 * Each call picks up where the last one left off, wrapping around at the end, so calling this regularly with a
+	 * small budget compacts the whole holder over time. Partial stacks are poured into earlier ones of the same type
+	 * through ordinary transactions, committed in pairs through a {@link io.github.soniex2.libtransfer.TransactionGroup},
+	 * so this runs alongside other transactions, and only ever holds the read lock as long as they do. Calls are
+	 * serialized.
+	 * </p>
+	 *
+	 * @param maxSlots The most slots to go over.
+	 * @param timeSliceNanos The most time to spend, in nanoseconds. Checked every few slots.
+	 * @return How many slots were emptied.
+	 * @see BackgroundCompactor
+	 */
+	public int compact(int maxSlots, long timeSliceNanos) {
+		return compaction.step(array, maxSlots, System.nanoTime() + timeSliceNanos);
+	}
+
 	@Override
 	public int getSlotLimit(int slot) {
 		return empty.getMaxCount();
 	}
 
+	@Override
+	public long getOrdinal() {
+		return ordinal;
+	}
+
 	@Override
 	public int getSlots() {
 		return array.length();
@@ -84,15 +524,23 @@ public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedE
 
 	/**
 	 * Invalidate this SizedElementHolderImpl.
+	 * <p>
+	 * This waits for open strong transactions to be committed or reverted, while refusing new ones.
+	 * </p>
 	 */
 	public void invalidate() {
-		rwlock.writeLock().lock();
+		strongHolds.beginInvalidation();
 		try {
-			if (valid != null) {
-				valid.set(false);
+			rwlock.writeLock().lock();
+			try {
+				if (valid != null) {
+					valid.set(false);
+				}
+			} finally {
+				rwlock.writeLock().unlock();
 			}
 		} finally {
-			rwlock.writeLock().unlock();
+			strongHolds.endInvalidation();
 		}
 	}
 
@@ -102,16 +550,186 @@ public class SizedElementHolderImpl<T extends SizedElement<T>> implements SizedE
 	 * @param newsize The new size.
 	 */
 	public void clearAndResize(int newsize) {
+		// strong transactions must be able to take the read lock to finish, so wait for them before taking the write lock.
+		strongHolds.beginInvalidation();
 		rwlock.writeLock().lock();
 		try {
 			invalidate();
 			valid = new AtomicBoolean(true);
-			array = new AtomicReferenceArray<>(newsize);
+			// the old cells won't change anymore, so their snapshots stay as they are.
+			snapshots.clear();
+			if (changes != null) {
+				changes.cleared();
+			}
+			totals = typeKey == null ? null : new TypeTotals<T>(typeKey);
+			// get() doesn't lock, so only publish the new cells once they're all there.
+			AtomicReferenceArray<SizedElementCell<T>> array = new AtomicReferenceArray<>(newsize);
 			for (int i = 0; i < array.length(); i++) {
-				array.set(i, new SizedElementCell<>(emptyFactory.get(), valid, rwlock.readLock()));
+				array.set(i, new SizedElementCell<>(emptyFactory.get(), valid, rwlock.readLock(), strongHolds, i, listener));
 			}
+			this.array = array;
+			cleared(newsize);
 		} finally {
 			rwlock.writeLock().unlock();
+			strongHolds.endInvalidation();
+		}
+	}
+
+	/**
+	 * Called after a transaction changed the committed contents of a slot, with the read lock held.
+	 * <p>
+	 * Concurrent commits on the same slot may be reported out of order.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param oldValue The slot's previous contents.
+	 * @param newValue The slot's new contents.
+	 */
+	protected void slotCommitted(int slot, T oldValue, T newValue) {
+	}
+
+	/**
+	 * Called after a transaction changed how much room is left for insertions in a slot, with the read lock held.
+	 * <p>
+	 * Concurrent changes on the same slot may be reported out of order.
+	 * </p>
+	 *
+	 * @param slot The slot.
+	 * @param oldValue The slot's previous post-insert contents.
+	 * @param newValue The slot's new post-insert contents.
+	 */
+	protected void slotPostInsertChanged(int slot, T oldValue, T newValue) {
+	}
+
+	/**
+	 * Retrieve the cell for the given slot.
+	 *
+	 * @param slot The slot.
+	 * @return The cell.
+	 */
+	SizedElementCell<T> cell(int slot) {
+		return array.get(slot);
+	}
+
+	/**
+	 * Clear this SizedElementHolderImpl, initialize it with a new size, and fill it, all without letting go of the
+	 * write lock.
+	 * <p>
+	 * Open transactions are invalidated, as with {@link #clearAndResize(int)}, and no new ones can be opened until
+	 * the filler returns, so none of them can see, or reserve against, a partially filled holder. Slots are filled
+	 * directly, without transactions. Listeners and totals see each filled slot as a commit. The filler runs with the
+	 * write lock held, so everything else on this holder waits for it, including any I/O it does.
+	 * </p>
+	 *
+	 * @param newsize The new size.
+	 * @param filler Fills the slots, each at most once, through the given restorer.
+	 * @throws IOException If the filler throws it. The holder is left with whatever was filled so far.
+	 */
+	void clearAndRestore(int newsize, Filler<T> filler) throws IOException {
+		// strong transactions must be able to take the read lock to finish, so wait for them before taking the write lock.
+		strongHolds.beginInvalidation();
+		rwlock.writeLock().lock();
+		try {
+			clearAndResize(newsize);
+			AtomicReferenceArray<SizedElementCell<T>> array = this.array;
+			filler.fill((slot, value) -> array.get(slot).reset(Objects.requireNonNull(value)));
+		} finally {
+			rwlock.writeLock().unlock();
+			strongHolds.endInvalidation();
+		}
+	}
+
+	/**
+	 * Fills the slots of a holder being restored.
+	 *
+	 * @see #clearAndRestore(int, Filler)
+	 */
+	@FunctionalInterface
+	interface Filler<T> {
+		/**
+		 * Fill the slots.
+		 *
+		 * @param restorer Replaces the contents of a slot.
+		 * @throws IOException If the contents can't be read.
+		 */
+		void fill(Restorer<T> restorer) throws IOException;
+	}
+
+	/**
+	 * Replaces the contents of a slot, while its holder is being restored.
+	 */
+	@FunctionalInterface
+	interface Restorer<T> {
+		/**
+		 * Replace the contents of the given slot.
+		 *
+		 * @param slot The slot.
+		 * @param value The new contents.
+		 * @throws IndexOutOfBoundsException If {@code slot} is out of range.
+		 */
+		void restore(int slot, T value);
+	}
+
+	/**
+	 * Called after this holder was cleared and resized, with the write lock held.
+	 * <p>
+	 * Note that this is first called from the constructor, before subclass fields are initialized.
+	 * </p>
+	 *
+	 * @param newsize The new size.
+	 */
+	protected void cleared(int newsize) {
+	}
+
+	/**
+	 * Commits and reverts all its cell transactions under a single read lock, and commits them as a single commit.
+	 */
+	private static final class BulkTransaction<T extends SizedElement<T>> extends CompositeTransaction<T> {
+		private final Lock readLock;
+		private final Lock commitLock;
+
+		BulkTransaction(T empty, Lock readLock, Lock commitLock) {
+			super(empty, true);
+			this.readLock = readLock;
+			this.commitLock = commitLock;
+		}
+
+		@Override
+		public boolean commit() {
+			readLock.lock();
+			try {
+				// one commit, as far as snapshots are concerned.
+				commitLock.lock();
+				try {
+					return super.commit();
+				} finally {
+					commitLock.unlock();
+				}
+			} finally {
+				readLock.unlock();
+			}
+		}
+
+		@Override
+		public boolean revert() {
+			readLock.lock();
+			try {
+				return super.revert();
+			} finally {
+				readLock.unlock();
+			}
+		}
+
+		@Override
+		protected boolean commitPart(Transaction<T> part) {
+			((SizedElementCell.CellTransaction<T>) part).finish(true, true);
+			return true;
+		}
+
+		@Override
+		protected boolean revertPart(Transaction<T> part) {
+			((SizedElementCell.CellTransaction<T>) part).finish(false, true);
+			return true;
 		}
 	}
 }
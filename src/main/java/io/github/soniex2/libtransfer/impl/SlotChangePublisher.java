@@ -0,0 +1,241 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SlotChange;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Publishes batches of changes to a holder's slots, with backpressure.
+ * <p>
+ * The subscriber interfaces mirror {@code java.util.concurrent.Flow}'s, so they can be adapted one method to one
+ * method where it's available.
+ * </p>
+ * <p>
+ * Commits only mark their slot as changed, remembering what it held before, if it wasn't marked already. Marked slots
+ * are gathered into batches on an executor, with each slot's contents read at that time, so a batch has at most one
+ * change per slot, and the latest contents of every slot eventually get published. Subscribers without demand have
+ * their batches merged together until they request more, so a slow subscriber never holds up commits, and never has
+ * more pending changes than there are slots.
+ * </p>
+ * <p>
+ * Clearing the holder isn't published as changes.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#changes()
+ */
+public final class SlotChangePublisher<T extends SizedElement<T>> {
+	private final IntFunction<T> contents;
+	private final Executor executor;
+	// slot -> contents before the first unpublished change.
+	private final ConcurrentHashMap<Integer, T> dirty = new ConcurrentHashMap<>();
+	private final CopyOnWriteArrayList<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/**
+	 * Construct a new SlotChangePublisher.
+	 *
+	 * @param contents Reads a slot's current committed contents.
+	 * @param executor The executor to put batches together and deliver them on.
+	 */
+	SlotChangePublisher(IntFunction<T> contents, Executor executor) {
+		this.contents = Objects.requireNonNull(contents);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * Subscribe to batches of changes. {@link Subscriber#onSubscribe(Subscription)} is called right away, on the
+	 * calling thread, and only changes committed after it are published.
+	 *
+	 * @param subscriber The subscriber.
+	 * @throws NullPointerException If {@code subscriber} is {@code null}.
+	 */
+	public void subscribe(Subscriber<? super List<SlotChange<T>>> subscriber) {
+		ChangeSubscription subscription = new ChangeSubscription(Objects.requireNonNull(subscriber));
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/**
+	 * Mark a slot as changed. Called after each commit.
+	 *
+	 * @param slot The slot.
+	 * @param oldValue The slot's contents before the commit.
+	 */
+	void changed(int slot, T oldValue) {
+		// most commits hit an already marked slot, and stop here.
+		if (subscriptions.isEmpty() || dirty.putIfAbsent(slot, oldValue) != null) {
+			return;
+		}
+		signal();
+	}
+
+	/**
+	 * Forget about unpublished changes, as the slots they're about are gone.
+	 */
+	void cleared() {
+		dirty.clear();
+	}
+
+	private void signal() {
+		if (wip.getAndIncrement() == 0) {
+			executor.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+		int missed = 1;
+		do {
+			List<SlotChange<T>> batch = new ArrayList<>();
+			for (Integer slot : dirty.keySet()) {
+				T oldValue = dirty.remove(slot);
+				if (oldValue == null) {
+					continue;
+				}
+				T newValue;
+				try {
+					// read after unmarking: if it changes again, it gets marked again.
+					newValue = contents.apply(slot);
+				} catch (IndexOutOfBoundsException e) {
+					// the holder shrank under us.
+					continue;
+				}
+				if (!sameContents(oldValue, newValue)) {
+					batch.add(new SlotChange<>(slot, oldValue, newValue));
+				}
+			}
+			for (ChangeSubscription subscription : subscriptions) {
+				subscription.deliver(batch);
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private static <T extends SizedElement<T>> boolean sameContents(T a, T b) {
+		return a == b || a.isEmpty() && b.isEmpty()
+				|| !a.isEmpty() && !b.isEmpty() && a.getCount() == b.getCount() && a.hasSameType(b);
+	}
+
+	/**
+	 * Receives batches of changes. Mirrors {@code java.util.concurrent.Flow.Subscriber}.
+	 */
+	public interface Subscriber<B> {
+		/**
+		 * Called once, before anything else.
+		 *
+		 * @param subscription The subscription, to request batches with.
+		 */
+		void onSubscribe(Subscription subscription);
+
+		/**
+		 * Called with each batch, once per requested batch. Never called concurrently.
+		 *
+		 * @param batch The batch.
+		 */
+		void onNext(B batch);
+
+		/**
+		 * Called if the subscription failed. Nothing is called afterwards.
+		 *
+		 * @param throwable The failure.
+		 */
+		void onError(Throwable throwable);
+
+		/**
+		 * Called if the subscription completed. Nothing is called afterwards.
+		 */
+		void onComplete();
+	}
+
+	/**
+	 * Links a subscriber to a publisher. Mirrors {@code java.util.concurrent.Flow.Subscription}.
+	 */
+	public interface Subscription {
+		/**
+		 * Request up to the given number of further batches.
+		 *
+		 * @param n The number of batches. A non-positive number fails the subscription.
+		 */
+		void request(long n);
+
+		/**
+		 * Stop receiving batches. They may still be received for a short while.
+		 */
+		void cancel();
+	}
+
+	private final class ChangeSubscription implements Subscription {
+		private final Subscriber<? super List<SlotChange<T>>> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		// only touched while draining.
+		private final Map<Integer, SlotChange<T>> pending = new LinkedHashMap<>();
+		private volatile Throwable failure;
+		private volatile boolean cancelled;
+
+		ChangeSubscription(Subscriber<? super List<SlotChange<T>>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				failure = new IllegalArgumentException("Non-positive request: " + n);
+			} else {
+				demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		void deliver(List<SlotChange<T>> batch) {
+			if (cancelled) {
+				return;
+			}
+			if (failure != null) {
+				cancel();
+				subscriber.onError(failure);
+				return;
+			}
+			for (SlotChange<T> change : batch) {
+				SlotChange<T> previous = pending.get(change.getSlot());
+				if (previous == null) {
+					pending.put(change.getSlot(), change);
+				} else if (sameContents(previous.getOldValue(), change.getNewValue())) {
+					pending.remove(change.getSlot());
+				} else {
+					pending.put(change.getSlot(), new SlotChange<>(change.getSlot(), previous.getOldValue(), change.getNewValue()));
+				}
+			}
+			if (pending.isEmpty() || demand.get() == 0) {
+				return;
+			}
+			if (demand.get() != Long.MAX_VALUE) {
+				demand.decrementAndGet();
+			}
+			List<SlotChange<T>> next = new ArrayList<>(pending.values());
+			pending.clear();
+			try {
+				subscriber.onNext(next);
+			} catch (RuntimeException | Error e) {
+				cancel();
+				subscriber.onError(e);
+			}
+		}
+	}
+}
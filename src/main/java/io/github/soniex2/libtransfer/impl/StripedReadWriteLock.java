@@ -0,0 +1,239 @@
+package io.github.soniex2.libtransfer.impl;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ReadWriteLock for read-mostly use, where readers don't contend on a shared counter.
+ * <p>
+ * Each reader thread has a stripe of its own: a flag, padded onto its own cache line, which it sets on its outermost
+ * acquisition and clears on its outermost release. Readers write to nothing else, so readers on different threads
+ * never write to the same memory. Setting the flag is still a volatile write, which costs a memory fence, but not a
+ * contended one. A writer announces itself, then waits for every reader's flag to clear. New readers back off while
+ * a writer is waiting or active; reentrant reads always succeed, so a thread holding the read lock can't deadlock
+ * against a waiting writer. This makes writes much more expensive than with a
+ * {@link java.util.concurrent.locks.ReentrantReadWriteLock}, as they go over every thread which ever took the read
+ * lock, which suits {@link SizedElementHolderImpl}, whose only writers are {@code invalidate()} and
+ * {@code clearAndResize()}.
+ * </p>
+ * <p>
+ * Both locks are reentrant, and the thread holding the write lock may also take the read lock. Read locks must be
+ * released by the thread which acquired them. Conditions are not supported.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+	// each reader's flag sits in the middle of an array of its own, 64 bytes from either end, so it gets a cache line
+	// to itself.
+	private static final int PADDING = 16;
+
+	private final ThreadLocal<Holds> holds = ThreadLocal.withInitial(this::register);
+	// the stripes of every live thread which took the read lock, for writers to wait on.
+	private final ConcurrentLinkedQueue<Holds> readers = new ConcurrentLinkedQueue<>();
+	private final ReentrantLock writerLock = new ReentrantLock();
+	private volatile boolean writing;
+
+	private final Lock readLock = new ReadLock();
+	private final Lock writeLock = new WriteLock();
+
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+
+	private Holds register() {
+		Holds holds = new Holds();
+		readers.add(holds);
+		return holds;
+	}
+
+	private static final class Holds {
+		final Thread thread = Thread.currentThread();
+		final AtomicIntegerArray stripe = new AtomicIntegerArray(PADDING * 2);
+		// only touched by the owning thread.
+		int count;
+
+		boolean isActive() {
+			return stripe.get(PADDING) != 0;
+		}
+	}
+
+	private final class ReadLock implements Lock {
+		private boolean tryAcquire(Holds holds) {
+			if (holds.count > 0) {
+				holds.count++;
+				return true;
+			}
+			// a volatile write then a volatile read: either the writer sees us, or we see the writer.
+			holds.stripe.set(PADDING, 1);
+			if (writing && !writerLock.isHeldByCurrentThread()) {
+				holds.stripe.set(PADDING, 0);
+				return false;
+			}
+			holds.count = 1;
+			return true;
+		}
+
+		@Override
+		public void lock() {
+			Holds holds = StripedReadWriteLock.this.holds.get();
+			while (!tryAcquire(holds)) {
+				// wait for the writer to be done.
+				writerLock.lock();
+				writerLock.unlock();
+			}
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			Holds holds = StripedReadWriteLock.this.holds.get();
+			while (!tryAcquire(holds)) {
+				writerLock.lockInterruptibly();
+				writerLock.unlock();
+			}
+		}
+
+		@Override
+		public boolean tryLock() {
+			return tryAcquire(holds.get());
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			Holds holds = StripedReadWriteLock.this.holds.get();
+			long deadline = System.nanoTime() + unit.toNanos(time);
+			while (!tryAcquire(holds)) {
+				if (!writerLock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+					return false;
+				}
+				writerLock.unlock();
+			}
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+			Holds holds = StripedReadWriteLock.this.holds.get();
+			if (holds.count <= 0) {
+				throw new IllegalMonitorStateException();
+			}
+			if (--holds.count == 0) {
+				// nothing after this needs to be ordered against it, so a release store will do.
+				holds.stripe.lazySet(PADDING, 0);
+			}
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private final class WriteLock implements Lock {
+		private void drain() {
+			writing = true;
+			for (Iterator<Holds> it = readers.iterator(); it.hasNext(); ) {
+				Holds holds = it.next();
+				while (holds.isActive()) {
+					LockSupport.parkNanos(1000);
+				}
+				prune(it, holds);
+			}
+		}
+
+		/**
+		 * Forget the given reader if its thread is gone. Threads register before they first set their flag, so any
+		 * reader missed by an iterator made after setting {@code writing} will see it, and back off.
+		 */
+		private void prune(Iterator<Holds> it, Holds holds) {
+			if (!holds.thread.isAlive() && !holds.isActive()) {
+				it.remove();
+			}
+		}
+
+		@Override
+		public void lock() {
+			writerLock.lock();
+			if (writerLock.getHoldCount() == 1) {
+				drain();
+			}
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			writerLock.lockInterruptibly();
+			if (writerLock.getHoldCount() == 1) {
+				drain();
+			}
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (!writerLock.tryLock()) {
+				return false;
+			}
+			if (writerLock.getHoldCount() == 1) {
+				writing = true;
+				for (Holds holds : readers) {
+					if (holds.isActive()) {
+						unlock();
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(time);
+			if (!writerLock.tryLock(time, unit)) {
+				return false;
+			}
+			if (writerLock.getHoldCount() == 1) {
+				writing = true;
+				for (Iterator<Holds> it = readers.iterator(); it.hasNext(); ) {
+					Holds holds = it.next();
+					while (holds.isActive()) {
+						if (System.nanoTime() - deadline >= 0) {
+							unlock();
+							return false;
+						}
+						LockSupport.parkNanos(1000);
+					}
+					prune(it, holds);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void unlock() {
+			if (!writerLock.isHeldByCurrentThread()) {
+				throw new IllegalMonitorStateException();
+			}
+			if (writerLock.getHoldCount() == 1) {
+				writing = false;
+			}
+			writerLock.unlock();
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
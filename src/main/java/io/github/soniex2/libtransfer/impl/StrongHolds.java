@@ -0,0 +1,63 @@
+package io.github.soniex2.libtransfer.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Counts the open strong transactions of a holder, so invalidation can wait for them.
+ * <p>
+ * Holds aren't owned by any thread: a strong transaction may be opened on one thread and committed or reverted on
+ * another, e.g. in a {@code CompletableFuture} pipeline. While an invalidation is in progress, new holds are refused,
+ * and transactions which asked to be strong are opened as weak ones instead (they'd be invalidated anyway).
+ * </p>
+ *
+ * @author soniex2
+ */
+public final class StrongHolds {
+	private final LongAdder holds = new LongAdder();
+	private final AtomicInteger invalidating = new AtomicInteger();
+
+	/**
+	 * Try to take a hold.
+	 *
+	 * @return {@code true} if a hold was taken, {@code false} if an invalidation is in progress.
+	 */
+	public boolean tryAcquire() {
+		holds.increment();
+		if (invalidating.get() != 0) {
+			holds.decrement();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Release a hold taken with {@link #tryAcquire()}. May be called from any thread.
+	 */
+	public void release() {
+		holds.decrement();
+	}
+
+	/**
+	 * Start an invalidation: refuse new holds, and wait for the existing ones to be released.
+	 * <p>
+	 * Must be paired with {@link #endInvalidation()}. Invalidations may nest.
+	 * </p>
+	 */
+	public void beginInvalidation() {
+		invalidating.incrementAndGet();
+		long backoff = 1000;
+		while (holds.sum() != 0) {
+			LockSupport.parkNanos(backoff);
+			backoff = Math.min(backoff * 2, 1000000);
+		}
+	}
+
+	/**
+	 * End an invalidation started with {@link #beginInvalidation()}.
+	 */
+	public void endInvalidation() {
+		invalidating.decrementAndGet();
+	}
+}
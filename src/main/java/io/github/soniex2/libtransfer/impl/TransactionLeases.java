@@ -0,0 +1,305 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionStatus;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reverts transactions which weren't committed or reverted in time.
+ * <p>
+ * A leased transaction has a deadline. If it's still open by then, it's reverted, freeing whatever it reserved and,
+ * if it was strong, its hold on the holder, and the expiry is reported. The transaction then reads as
+ * {@link TransactionStatus#INVALIDATED}. Deadlines are kept in a hashed timer wheel, ticking on a daemon thread, so
+ * leasing a transaction is a queue offer, and finishing it is a single CAS: nothing is removed from the wheel until
+ * its bucket comes up.
+ * </p>
+ * <p>
+ * Finding out who leaked a transaction takes its creation stack, which is expensive to capture, so only one in every
+ * so many leases captures it, as set by {@link #setSampling(int)}.
+ * </p>
+ * <p>
+ * Leased transactions are reverted from the wheel's thread, so they must not come from a
+ * {@link io.github.soniex2.libtransfer.TransactionContext TransactionContext}.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#leaseTransactions(TransactionLeases, long)
+ */
+public final class TransactionLeases implements Closeable {
+	public static final long DEFAULT_TICK_MILLIS = 100;
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final int OPEN = 0;
+	private static final int FINISHED = 1;
+	private static final int EXPIRED = 2;
+	// the owner is using the transaction, so it can't expire right now.
+	private static final int BUSY = 3;
+
+	private final long tickMillis;
+	// only touched on the wheel's thread.
+	private final ArrayDeque<Lease<?>>[] wheel;
+	private final ConcurrentLinkedQueue<Lease<?>> added = new ConcurrentLinkedQueue<>();
+	private final Consumer<? super Expiry> reporter;
+	private final ScheduledExecutorService ticker;
+	private final AtomicLong leased = new AtomicLong();
+	private volatile long tick;
+	private volatile int sampling;
+
+	/**
+	 * Construct a new TransactionLeases with the default tick and wheel size.
+	 *
+	 * @param reporter Called with each expiry, on the wheel's thread.
+	 */
+	public TransactionLeases(Consumer<? super Expiry> reporter) {
+		this(reporter, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Construct a new TransactionLeases.
+	 *
+	 * @param reporter Called with each expiry, on the wheel's thread.
+	 * @param tickMillis How often the wheel ticks, in milliseconds. Deadlines are rounded up to whole ticks.
+	 * @param wheelSize How many buckets the wheel has. Rounded up to a power of two.
+	 * @throws IllegalArgumentException If {@code tickMillis} or {@code wheelSize} isn't positive.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TransactionLeases(Consumer<? super Expiry> reporter, long tickMillis, int wheelSize) {
+		this.reporter = Objects.requireNonNull(reporter);
+		if (tickMillis <= 0 || wheelSize <= 0 || wheelSize > 1 << 30) {
+			throw new IllegalArgumentException("Bad tick or wheel size");
+		}
+		this.tickMillis = tickMillis;
+		int size = Integer.highestOneBit(wheelSize);
+		wheel = new ArrayDeque[size < wheelSize ? size << 1 : size];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new ArrayDeque<>();
+		}
+		ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "libtransfer leases");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Capture the creation stack of one in every so many leased transactions.
+	 *
+	 * @param every How many leases to capture one stack for. {@code 0} to never capture stacks.
+	 * @throws IllegalArgumentException If {@code every} is negative.
+	 */
+	public void setSampling(int every) {
+		if (every < 0) {
+			throw new IllegalArgumentException("Negative sampling");
+		}
+		sampling = every;
+	}
+
+	/**
+	 * Lease the given transaction.
+	 *
+	 * @param transaction The transaction. Must not come from a TransactionContext.
+	 * @param timeoutMillis How long the transaction may stay open, in milliseconds.
+	 * @param <T> The element type.
+	 * @return The leased transaction, to be used instead of the given one.
+	 */
+	public <T extends SizedElement<T>> Transaction<T> lease(Transaction<T> transaction, long timeoutMillis) {
+		Objects.requireNonNull(transaction);
+		int sampling = this.sampling;
+		Throwable stack = sampling != 0 && leased.getAndIncrement() % sampling == 0 ? new Throwable("Transaction created here") : null;
+		long ticks = Math.max(1, (timeoutMillis + tickMillis - 1) / tickMillis);
+		Lease<T> lease = new Lease<>(transaction, tick + ticks, timeoutMillis, stack);
+		added.offer(lease);
+		return lease;
+	}
+
+	private void tick() {
+		long tick = this.tick;
+		Lease<?> lease;
+		while ((lease = added.poll()) != null) {
+			if (lease.state.get() != FINISHED) {
+				// anything already past its deadline goes in the current bucket.
+				wheel[(int) (Math.max(lease.deadline, tick) & wheel.length - 1)].add(lease);
+			}
+		}
+		ArrayDeque<Lease<?>> bucket = wheel[(int) (tick & wheel.length - 1)];
+		for (int n = bucket.size(); n > 0; n--) {
+			lease = bucket.poll();
+			if (lease.state.get() == FINISHED) {
+				continue;
+			}
+			if (lease.deadline > tick || !lease.expire()) {
+				// not yet, or the owner is using it right now. a busy one gets another chance next round.
+				bucket.add(lease);
+			}
+		}
+		this.tick = tick + 1;
+	}
+
+	/**
+	 * Stop expiring transactions. Open leased transactions are left as they are.
+	 */
+	@Override
+	public void close() {
+		ticker.shutdown();
+	}
+
+	/**
+	 * A transaction which expired.
+	 */
+	public static final class Expiry {
+		private final SizedElement<?> element;
+		private final long timeoutMillis;
+		private final Throwable creationStack;
+
+		Expiry(SizedElement<?> element, long timeoutMillis, Throwable creationStack) {
+			this.element = element;
+			this.timeoutMillis = timeoutMillis;
+			this.creationStack = creationStack;
+		}
+
+		/**
+		 * Retrieve the element(s) the transaction had reserved.
+		 *
+		 * @return The element(s).
+		 */
+		public SizedElement<?> getElement() {
+			return element;
+		}
+
+		/**
+		 * Retrieve how long the transaction was allowed to stay open.
+		 *
+		 * @return The timeout, in milliseconds.
+		 */
+		public long getTimeoutMillis() {
+			return timeoutMillis;
+		}
+
+		/**
+		 * Retrieve where the transaction was leased.
+		 *
+		 * @return The creation stack, or {@code null} if it wasn't sampled.
+		 */
+		public Throwable getCreationStack() {
+			return creationStack;
+		}
+	}
+
+	/**
+	 * A leased transaction. Whoever moves the state away from {@link #OPEN} gets to use the transaction.
+	 */
+	private final class Lease<T extends SizedElement<T>> implements Transaction<T> {
+		final Transaction<T> transaction;
+		final long deadline;
+		final long timeoutMillis;
+		final Throwable stack;
+		final AtomicInteger state = new AtomicInteger(OPEN);
+
+		Lease(Transaction<T> transaction, long deadline, long timeoutMillis, Throwable stack) {
+			this.transaction = transaction;
+			this.deadline = deadline;
+			this.timeoutMillis = timeoutMillis;
+			this.stack = stack;
+		}
+
+		/**
+		 * Revert the transaction, if the owner isn't using it. Called on the wheel's thread.
+		 *
+		 * @return Whether the lease is done with.
+		 */
+		boolean expire() {
+			if (!state.compareAndSet(OPEN, EXPIRED)) {
+				return state.get() != BUSY;
+			}
+			T element = transaction.get();
+			try {
+				if (transaction.getStatus().canRevert()) {
+					transaction.revert();
+				}
+				reporter.accept(new Expiry(element, timeoutMillis, stack));
+			} catch (RuntimeException e) {
+				// whatever went wrong, it mustn't stop the wheel, or nothing else would expire.
+			}
+			return true;
+		}
+
+		private boolean finish(boolean commit) {
+			if (!state.compareAndSet(OPEN, FINISHED)) {
+				throw new IllegalStateException();
+			}
+			return commit ? transaction.commit() : transaction.revert();
+		}
+
+		@Override
+		public T get() {
+			return transaction.get();
+		}
+
+		@Override
+		public boolean commit() {
+			return finish(true);
+		}
+
+		@Override
+		public boolean revert() {
+			return finish(false);
+		}
+
+		@Override
+		public TransactionStatus getStatus() {
+			if (state.compareAndSet(OPEN, BUSY)) {
+				try {
+					return transaction.getStatus();
+				} finally {
+					state.set(OPEN);
+				}
+			}
+			return state.get() == EXPIRED ? TransactionStatus.INVALIDATED : transaction.getStatus();
+		}
+
+		@Override
+		public boolean isStrong() {
+			return state.get() != EXPIRED && transaction.isStrong();
+		}
+
+		@Override
+		public void makeStrong() {
+			// once it's finished or expired, there's nothing to change.
+			if (state.compareAndSet(OPEN, BUSY)) {
+				try {
+					transaction.makeStrong();
+				} finally {
+					state.set(OPEN);
+				}
+			}
+		}
+
+		@Override
+		public void makeWeak() {
+			if (state.compareAndSet(OPEN, BUSY)) {
+				try {
+					transaction.makeWeak();
+				} finally {
+					state.set(OPEN);
+				}
+			}
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return transaction.isConcurrent();
+		}
+	}
+}
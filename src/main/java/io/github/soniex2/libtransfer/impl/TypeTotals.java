@@ -0,0 +1,111 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Running totals of committed and reserved elements, by type.
+ * <p>
+ * Updates only touch {@link LongAdder}s, so concurrent transactions on different slots don't contend on them.
+ * Committed totals are kept from the exact before/after values of each commit, so they add up even when commits are
+ * reported out of order.
+ * </p>
+ *
+ * @author soniex2
+ * @see SizedElementHolderImpl#SizedElementHolderImpl(int, java.util.function.Supplier, java.util.concurrent.locks.ReadWriteLock, Function)
+ */
+public final class TypeTotals<T extends SizedElement<T>> {
+	private final Function<? super T, ?> typeKey;
+	private final ConcurrentHashMap<Object, Totals> totals = new ConcurrentHashMap<>();
+
+	/**
+	 * Construct new, zeroed TypeTotals with the given type key function.
+	 *
+	 * @param typeKey The type key function. Only called with non-empty elements.
+	 */
+	public TypeTotals(Function<? super T, ?> typeKey) {
+		this.typeKey = Objects.requireNonNull(typeKey, "Type key function must not be null");
+	}
+
+	private static final class Totals {
+		final LongAdder committed = new LongAdder();
+		final LongAdder reservedIn = new LongAdder();
+		final LongAdder reservedOut = new LongAdder();
+	}
+
+	private Totals totals(T type) {
+		return totals.computeIfAbsent(typeKey.apply(type), k -> new Totals());
+	}
+
+	private Totals peek(T type) {
+		return type.isEmpty() ? null : totals.get(typeKey.apply(type));
+	}
+
+	/**
+	 * Record a change in a slot's committed contents.
+	 *
+	 * @param oldValue The slot's previous contents.
+	 * @param newValue The slot's new contents.
+	 */
+	public void committed(T oldValue, T newValue) {
+		if (!oldValue.isEmpty() && !newValue.isEmpty() && oldValue.hasSameType(newValue)) {
+			totals(newValue).committed.add(newValue.getCount() - oldValue.getCount());
+			return;
+		}
+		if (!oldValue.isEmpty()) {
+			totals(oldValue).committed.add(-oldValue.getCount());
+		}
+		if (!newValue.isEmpty()) {
+			totals(newValue).committed.add(newValue.getCount());
+		}
+	}
+
+	/**
+	 * Record a reservation being made, or, with a negative sign, being committed or reverted.
+	 *
+	 * @param element The non-empty element(s) reserved.
+	 * @param insert Whether the reservation is for an insertion, rather than an extraction.
+	 * @param sign {@code 1} when making the reservation, {@code -1} when releasing it.
+	 */
+	public void reserved(T element, boolean insert, int sign) {
+		Totals totals = totals(element);
+		(insert ? totals.reservedIn : totals.reservedOut).add(sign * (long) element.getCount());
+	}
+
+	/**
+	 * Get the total committed in slots, for the given type. Only exact while no commits are in flight.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return The committed total for the given type.
+	 */
+	public long getCommitted(T type) {
+		Totals totals = peek(type);
+		return totals == null ? 0 : totals.committed.sum();
+	}
+
+	/**
+	 * Get the total reserved by open insertions, for the given type.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return The total reserved by insertions, for the given type.
+	 */
+	public long getReservedIn(T type) {
+		Totals totals = peek(type);
+		return totals == null ? 0 : totals.reservedIn.sum();
+	}
+
+	/**
+	 * Get the total reserved by open extractions, for the given type.
+	 *
+	 * @param type The element whose type to look for.
+	 * @return The total reserved by extractions, for the given type.
+	 */
+	public long getReservedOut(T type) {
+		Totals totals = peek(type);
+		return totals == null ? 0 : totals.reservedOut.sum();
+	}
+}
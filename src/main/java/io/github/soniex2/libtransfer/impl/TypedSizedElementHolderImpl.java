@@ -0,0 +1,193 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.IndexedSizedElementHolder;
+import io.github.soniex2.libtransfer.TypedSizedElement;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A SizedElementHolderImpl for {@link TypedSizedElement}s, which keeps the type id of every slot in packed arrays.
+ * <p>
+ * Finding the slots which hold, or have room for, a type is a tight loop over an {@code int[]}, rather than a call
+ * to {@link TypedSizedElement#hasSameType(io.github.soniex2.libtransfer.SizedElement) hasSameType} per slot, and
+ * takes no more memory than the arrays themselves. Per-type totals are kept by type id.
+ * </p>
+ * <p>
+ * The arrays are read without synchronization, so in a concurrent system, what they say is only a hint, like
+ * everything {@link IndexedSizedElementHolder} says.
+ * </p>
+ *
+ * @author soniex2
+ */
+public class TypedSizedElementHolderImpl<T extends TypedSizedElement<T>> extends IndexingSizedElementHolderImpl<T> implements IndexedSizedElementHolder<T> {
+	private static final int EMPTY = TypedSizedElement.NO_TYPE;
+	private static final int FULL = -2;
+
+	// These are (re)created by resetIndex(), which first runs from the super constructor.
+	// The type id of each slot, by committed contents, or EMPTY.
+	private volatile int[] types;
+	// The type id of each slot, by post-insert contents, if partially filled. Otherwise EMPTY or FULL.
+	private volatile int[] insertTypes;
+
+	/**
+	 * Construct a new TypedSizedElementHolderImpl with the given size and empty element factory.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 */
+	public TypedSizedElementHolderImpl(int size, Supplier<T> emptyFactory) {
+		this(size, emptyFactory, new ReentrantReadWriteLock(true));
+	}
+
+	/**
+	 * Construct a new TypedSizedElementHolderImpl with the given size, empty element factory and lock.
+	 *
+	 * @param size The size.
+	 * @param emptyFactory The empty element factory.
+	 * @param rwlock The lock guarding {@link #invalidate()} and {@link #clearAndResize(int)}.
+	 * @see SizedElementHolderImpl#SizedElementHolderImpl(int, Supplier, ReadWriteLock)
+	 */
+	public TypedSizedElementHolderImpl(int size, Supplier<T> emptyFactory, ReadWriteLock rwlock) {
+		super(size, emptyFactory, rwlock, TypedSizedElement::typeId);
+	}
+
+	@Override
+	public int[] slotsContaining(T type) {
+		if (type.isEmpty()) {
+			return new int[0];
+		}
+		int id = type.typeId();
+		int[] types = this.types;
+		int n = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == id) {
+				n++;
+			}
+		}
+		int[] result = new int[n];
+		n = 0;
+		for (int i = 0; i < types.length && n < result.length; i++) {
+			if (types[i] == id) {
+				result[n++] = i;
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	@Override
+	public int[] slotsAccepting(T element) {
+		if (element.isEmpty()) {
+			return new int[0];
+		}
+		int id = element.typeId();
+		int perSlot = Math.max(1, Math.min(element.getMaxCount(), getSlotLimit(0)));
+		int wanted = element.getCount() / perSlot + (element.getCount() % perSlot == 0 ? 0 : 1);
+		int[] insertTypes = this.insertTypes;
+		int partial = 0;
+		for (int i = 0; i < insertTypes.length; i++) {
+			if (insertTypes[i] == id) {
+				partial++;
+			}
+		}
+		int[] result = new int[partial + wanted];
+		int n = 0;
+		for (int i = 0; i < insertTypes.length && n < partial; i++) {
+			if (insertTypes[i] == id) {
+				result[n++] = i;
+			}
+		}
+		for (int i = 0; i < insertTypes.length && n < result.length; i++) {
+			if (insertTypes[i] == EMPTY) {
+				result[n++] = i;
+			}
+		}
+		return n == result.length ? result : Arrays.copyOf(result, n);
+	}
+
+	@Override
+	public long availableToExtract(T type) {
+		if (type.isEmpty()) {
+			return 0;
+		}
+		int id = type.typeId();
+		int[] types = this.types;
+		long total = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == id) {
+				total += availableToExtract(i, type);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public long capacityFor(T type) {
+		if (type.isEmpty()) {
+			return 0;
+		}
+		int id = type.typeId();
+		int[] insertTypes = this.insertTypes;
+		long total = 0;
+		for (int i = 0; i < insertTypes.length; i++) {
+			if (insertTypes[i] == id || insertTypes[i] == EMPTY) {
+				total += capacityFor(i, type);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public boolean canExtract(T element) {
+		if (element.isEmpty()) {
+			return true;
+		}
+		int id = element.typeId();
+		int[] types = this.types;
+		long left = element.getCount();
+		for (int i = 0; i < types.length && left > 0; i++) {
+			if (types[i] == id) {
+				left -= availableToExtract(i, element);
+			}
+		}
+		return left <= 0;
+	}
+
+	@Override
+	public boolean canInsert(T element) {
+		if (element.isEmpty()) {
+			return true;
+		}
+		int id = element.typeId();
+		int[] insertTypes = this.insertTypes;
+		long left = element.getCount();
+		for (int i = 0; i < insertTypes.length && left > 0; i++) {
+			if (insertTypes[i] == id || insertTypes[i] == EMPTY) {
+				left -= capacityFor(i, element);
+			}
+		}
+		return left <= 0;
+	}
+
+	@Override
+	void indexCommitted(int slot, T value) {
+		types[slot] = value.isEmpty() ? EMPTY : value.typeId();
+	}
+
+	@Override
+	void indexPostInsert(int slot, T value, int fill) {
+		insertTypes[slot] = fill == FILL_PARTIAL ? value.typeId() : fill == FILL_EMPTY ? EMPTY : FULL;
+	}
+
+	@Override
+	void resetIndex(int newsize) {
+		int[] types = new int[newsize];
+		Arrays.fill(types, EMPTY);
+		int[] insertTypes = new int[newsize];
+		Arrays.fill(insertTypes, EMPTY);
+		this.types = types;
+		this.insertTypes = insertTypes;
+	}
+}
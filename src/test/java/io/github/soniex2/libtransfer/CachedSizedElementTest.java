@@ -0,0 +1,166 @@
+package io.github.soniex2.libtransfer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class CachedSizedElementTest {
+	private static final class Element extends CachedSizedElement<Element> {
+		static final Element EMPTY = new Element(0);
+
+		Element(int count) {
+			super(count);
+		}
+
+		Element(Element sameType, int count) {
+			super(sameType, count);
+		}
+
+		@Override
+		protected Element create(int count) {
+			return count == 0 ? EMPTY : new Element(this, count);
+		}
+
+		@Override
+		protected boolean isSameType(Element other) {
+			return false;
+		}
+
+		@Override
+		public int getMaxCount() {
+			return 64;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return getCount() == 0;
+		}
+
+		@Override
+		public Element combine(Element other) {
+			return withCount(getCount() + other.getCount());
+		}
+
+		@Override
+		public Element split(Element other) {
+			return withCount(getCount() - other.getCount());
+		}
+	}
+
+	@Test
+	public void reusesInstancesByCount() {
+		Element element = new Element(5);
+		assertSame(element.withCount(7), element.withCount(7));
+		assertSame(element.withCount(7), element.withCount(3).withCount(7));
+		assertTrue(element.withCount(7).hasSameType(element));
+		assertFalse(element.hasSameType(new Element(5)));
+	}
+
+	private static final class Keyed extends CachedSizedElement<Keyed> {
+		final int type;
+
+		Keyed(InstanceCache<Keyed> cache, int type, int count) {
+			super(cache, type, count);
+			this.type = type;
+		}
+
+		Keyed(Keyed sameType, int count) {
+			super(sameType, count);
+			this.type = sameType.type;
+		}
+
+		@Override
+		protected Keyed create(int count) {
+			return new Keyed(this, count);
+		}
+
+		@Override
+		protected boolean isSameType(Keyed other) {
+			return type == other.type;
+		}
+
+		@Override
+		public int getMaxCount() {
+			return 64;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return getCount() == 0;
+		}
+
+		@Override
+		public Keyed combine(Keyed other) {
+			return withCount(getCount() + other.getCount());
+		}
+
+		@Override
+		public Keyed split(Keyed other) {
+			return withCount(getCount() - other.getCount());
+		}
+	}
+
+	@Test
+	public void separatelyCreatedElementsOfATypeShareInstances() {
+		CachedSizedElement.InstanceCache<Keyed> cache = new CachedSizedElement.InstanceCache<>(16);
+		Keyed first = new Keyed(cache, 1, 5);
+		Keyed second = new Keyed(cache, 1, 9);
+		assertSame(first.withCount(7), second.withCount(7));
+		assertSame(first.withCount(7), cache.get(1, 7));
+		assertNull(cache.get(1, 8));
+		assertNull(cache.get(2, 7));
+		Keyed other = new Keyed(cache, 2, 5);
+		assertNotSame(first.withCount(7), other.withCount(7));
+		assertFalse(first.hasSameType(other));
+	}
+
+	@Test
+	public void instanceCacheIsBounded() {
+		CachedSizedElement.InstanceCache<Keyed> cache = new CachedSizedElement.InstanceCache<>(4);
+		for (int type = 0; type < 100; type++) {
+			Keyed element = new Keyed(cache, type, 1);
+			assertSame(element.withCount(2), cache.get(type, 2));
+			assertTrue(cache.size() <= 4);
+		}
+		// evicted types start a new table, but are still the same type.
+		Keyed evicted = new Keyed(cache, 0, 1);
+		assertTrue(evicted.hasSameType(new Keyed(cache, 0, 3)));
+	}
+
+	@Test
+	public void racingFirstUsesShareOneTable() throws Exception {
+		for (int round = 0; round < 200; round++) {
+			Element element = new Element(1);
+			CountDownLatch start = new CountDownLatch(1);
+			ExecutorService pool = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<Element>> futures = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					futures.add(pool.submit(() -> {
+						start.await();
+						return element.withCount(9);
+					}));
+				}
+				start.countDown();
+				Element first = futures.get(0).get(10, TimeUnit.SECONDS);
+				for (Future<Element> future : futures) {
+					assertSame(first, future.get(10, TimeUnit.SECONDS));
+				}
+				assertSame(first, element.withCount(9));
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+	}
+}
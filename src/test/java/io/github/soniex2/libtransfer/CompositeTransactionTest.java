@@ -0,0 +1,70 @@
+package io.github.soniex2.libtransfer;
+
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class CompositeTransactionTest {
+	private static SizedElementHolderImpl<TestElement> filled(int... counts) {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(counts.length, () -> TestElement.EMPTY);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				holder.insert(i, TestElement.of(1, counts[i]), false).commit();
+			}
+		}
+		return holder;
+	}
+
+	@Test
+	public void bulkExtractTakesSlotsInOrder() {
+		SizedElementHolderImpl<TestElement> holder = filled(10, 0, 20, 30);
+		Transaction<TestElement> transaction = holder.extractBulk(new int[]{3, 0, 2}, TestElement.of(1, 35), false);
+		assertEquals(35, transaction.get().getCount());
+		assertTrue(transaction.commit());
+		assertEquals(5, holder.get(0).getCount());
+		assertEquals(20, holder.get(2).getCount());
+		assertTrue(holder.get(3).isEmpty());
+	}
+
+	@Test
+	public void bulkExtractOverRangeTakesWhatThereIs() {
+		SizedElementHolderImpl<TestElement> holder = filled(10, 0, 20, 30);
+		Transaction<TestElement> transaction = holder.extractBulk(1, 3, TestElement.of(1, 64), false);
+		assertEquals(20, transaction.get().getCount());
+		assertTrue(transaction.commit());
+		assertEquals(40, TestElement.total(holder, 1));
+	}
+
+	@Test
+	public void bulkRevertReleasesEverything() {
+		SizedElementHolderImpl<TestElement> holder = filled(10, 0, 20, 30);
+		Transaction<TestElement> transaction = holder.insertBulk(0, 4, TestElement.of(1, 60), true);
+		assertEquals(60, transaction.get().getCount());
+		assertTrue(transaction.revert());
+		assertEquals(60, TestElement.total(holder, 1));
+		assertEquals(64 * 4 - 60, holder.capacityFor(0, TestElement.of(1, 1)) + holder.capacityFor(1, TestElement.of(1, 1))
+				+ holder.capacityFor(2, TestElement.of(1, 1)) + holder.capacityFor(3, TestElement.of(1, 1)));
+	}
+
+	@Test
+	public void invalidatedPartCommitsNothing() {
+		SizedElementHolderImpl<TestElement> a = filled(10);
+		SizedElementHolderImpl<TestElement> b = filled(10);
+		CompositeTransaction<TestElement> transaction = new CompositeTransaction<>(TestElement.EMPTY, true);
+		transaction.add(a.extract(0, TestElement.of(1, 4), false));
+		transaction.add(b.extract(0, TestElement.of(1, 4), false));
+		b.invalidate();
+		try {
+			transaction.commit();
+			fail("committed an invalidated transaction");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(TransactionStatus.INVALIDATED, transaction.getStatus());
+		assertEquals(10, a.get(0).getCount());
+		assertEquals(10, a.availableToExtract(0, TestElement.of(1, 1)));
+	}
+}
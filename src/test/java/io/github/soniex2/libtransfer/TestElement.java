@@ -0,0 +1,93 @@
+package io.github.soniex2.libtransfer;
+
+import io.github.soniex2.libtransfer.impl.PackedElementCodec;
+
+/**
+ * A type id + count element for tests.
+ *
+ * @author soniex2
+ */
+public final class TestElement implements TypedSizedElement<TestElement> {
+	public static final TestElement EMPTY = new TestElement(NO_TYPE, 0);
+	public static final int MAX_COUNT = 64;
+	public static final PackedElementCodec<TestElement> CODEC = new PackedElementCodec<TestElement>() {
+		@Override
+		public int getTypeId(TestElement element) {
+			return element.typeId();
+		}
+
+		@Override
+		public TestElement decode(int typeId, int count) {
+			return of(typeId, count);
+		}
+	};
+
+	private final int type;
+	private final int count;
+
+	private TestElement(int type, int count) {
+		this.type = type;
+		this.count = count;
+	}
+
+	public static TestElement of(int type, int count) {
+		if (count == 0) {
+			return EMPTY;
+		}
+		if (type < 0 || count < 0 || count > MAX_COUNT) {
+			throw new IllegalArgumentException();
+		}
+		return new TestElement(type, count);
+	}
+
+	@Override
+	public int typeId() {
+		return type;
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public TestElement withCount(int count) {
+		if (count != 0 && isEmpty()) {
+			throw new IllegalStateException();
+		}
+		return of(type, count);
+	}
+
+	@Override
+	public int getMaxCount() {
+		return isEmpty() ? Integer.MAX_VALUE : MAX_COUNT;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this == EMPTY;
+	}
+
+	@Override
+	public String toString() {
+		return isEmpty() ? "EMPTY" : type + "x" + count;
+	}
+
+	/**
+	 * Retrieve how many elements of the given type the given holder holds, by committed contents.
+	 *
+	 * @param holder The holder.
+	 * @param type The type id.
+	 * @return The total.
+	 */
+	public static long total(SizedElementHolder<TestElement> holder, int type) {
+		long total = 0;
+		for (int i = 0; i < holder.getSlots(); i++) {
+			TestElement value = holder.get(i);
+			if (value.typeId() == type) {
+				total += value.getCount();
+			}
+		}
+		return total;
+	}
+}
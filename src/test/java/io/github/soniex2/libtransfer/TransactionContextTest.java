@@ -0,0 +1,51 @@
+package io.github.soniex2.libtransfer;
+
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class TransactionContextTest {
+	private static final TransactionContext.Key<Object> KEY = new TransactionContext.Key<>();
+
+	@Test
+	public void recyclesOnItsOwnThread() {
+		TransactionContext context = new TransactionContext();
+		Object object = new Object();
+		context.recycle(KEY, object);
+		assertSame(object, context.poll(KEY));
+		assertNull(context.poll(KEY));
+	}
+
+	@Test
+	public void dropsWhatOtherThreadsGiveBack() throws Exception {
+		TransactionContext context = new TransactionContext();
+		Thread thread = new Thread(() -> context.recycle(KEY, new Object()));
+		thread.start();
+		thread.join();
+		assertNull(context.poll(KEY));
+	}
+
+	@Test
+	public void transactionsMayFinishOnAnotherThread() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		TransactionContext context = TransactionContext.current();
+		Transaction<TestElement> first = holder.insert(0, TestElement.of(1, 5), true, context);
+		Transaction<TestElement> second = holder.insert(1, TestElement.of(1, 5), true, context);
+		assertTrue(CompletableFuture.supplyAsync(first::commit).get());
+		assertTrue(CompletableFuture.supplyAsync(second::commit).get());
+		// neither went back to the pool, so they can't both be handed out again.
+		Transaction<TestElement> third = holder.insert(0, TestElement.of(1, 1), false, context);
+		Transaction<TestElement> fourth = holder.insert(1, TestElement.of(1, 1), false, context);
+		assertNotSame(third, fourth);
+		assertTrue(third.commit());
+		assertTrue(fourth.commit());
+		assertEquals(6, holder.get(0).getCount());
+		assertEquals(6, holder.get(1).getCount());
+	}
+}
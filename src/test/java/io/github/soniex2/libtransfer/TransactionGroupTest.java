@@ -0,0 +1,108 @@
+package io.github.soniex2.libtransfer;
+
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class TransactionGroupTest {
+	private static SizedElementHolderImpl<TestElement> filled(int slots, int count) {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(slots, () -> TestElement.EMPTY);
+		for (int i = 0; i < slots && count > 0; i++) {
+			int n = Math.min(count, TestElement.MAX_COUNT);
+			holder.insert(i, TestElement.of(0, n), false).commit();
+			count -= n;
+		}
+		return holder;
+	}
+
+	@Test
+	public void ordinalsAreUniqueAndIncreasing() {
+		SizedElementHolder<TestElement> a = filled(1, 0);
+		SizedElementHolder<TestElement> b = filled(1, 0);
+		assertTrue(a.getOrdinal() < b.getOrdinal());
+	}
+
+	@Test
+	public void commitsAcrossHoldersAddedOutOfOrder() {
+		SizedElementHolderImpl<TestElement> a = filled(2, 64);
+		SizedElementHolderImpl<TestElement> b = filled(2, 0);
+		try (TransactionGroup group = new TransactionGroup()) {
+			// b was created later, so this is against the holder order.
+			assertEquals(10, group.insert(b, 0, TestElement.of(0, 10)).getCount());
+			assertEquals(10, group.extract(a, 0, TestElement.of(0, 10)).getCount());
+			assertTrue(group.commit());
+			assertEquals(TransactionStatus.CONFIRMED, group.getStatus());
+		}
+		assertEquals(54, TestElement.total(a, 0));
+		assertEquals(10, TestElement.total(b, 0));
+	}
+
+	@Test
+	public void closeRevertsUncommittedGroup() {
+		SizedElementHolderImpl<TestElement> a = filled(2, 64);
+		SizedElementHolderImpl<TestElement> b = filled(2, 0);
+		try (TransactionGroup group = new TransactionGroup()) {
+			group.extract(a, 0, TestElement.of(0, 10));
+			group.insert(b, 0, TestElement.of(0, 10));
+		}
+		assertEquals(64, TestElement.total(a, 0));
+		assertEquals(0, TestElement.total(b, 0));
+		assertEquals(64, a.capacityFor(1, TestElement.of(0, 1)));
+		assertEquals(64, b.capacityFor(0, TestElement.of(0, 1)));
+	}
+
+	@Test
+	public void invalidatedHolderCommitsNothing() {
+		SizedElementHolderImpl<TestElement> a = filled(2, 64);
+		SizedElementHolderImpl<TestElement> b = filled(2, 0);
+		TransactionGroup group = new TransactionGroup();
+		group.extract(a, 0, TestElement.of(0, 10));
+		group.insert(b, 0, TestElement.of(0, 10));
+		b.invalidate();
+		assertFalse(group.commit());
+		assertEquals(TransactionStatus.REVERTED, group.getStatus());
+		assertEquals(1, group.getFailures().size());
+		assertSame(b, group.getFailures().get(0).getHolder());
+		assertEquals(64, TestElement.total(a, 0));
+		assertEquals(0, TestElement.total(b, 0));
+	}
+
+	@Test
+	public void opposingGroupsDontDeadlock() throws Exception {
+		SizedElementHolderImpl<TestElement> a = filled(4, 128);
+		SizedElementHolderImpl<TestElement> b = filled(4, 128);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> ab = pool.submit(() -> shuffle(a, b, 20000));
+			Future<?> ba = pool.submit(() -> shuffle(b, a, 20000));
+			ab.get(30, TimeUnit.SECONDS);
+			ba.get(30, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(256, TestElement.total(a, 0) + TestElement.total(b, 0));
+	}
+
+	private static void shuffle(SizedElementHolder<TestElement> from, SizedElementHolder<TestElement> to, int rounds) {
+		for (int i = 0; i < rounds; i++) {
+			try (TransactionGroup group = new TransactionGroup()) {
+				TestElement moved = group.extract(from, i & 3, TestElement.of(0, 3));
+				if (moved.isEmpty()) {
+					continue;
+				}
+				if (group.insert(to, (i >> 2) & 3, moved).getCount() == moved.getCount()) {
+					group.commit();
+				}
+			}
+		}
+	}
+}
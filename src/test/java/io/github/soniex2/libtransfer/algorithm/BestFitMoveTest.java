@@ -0,0 +1,96 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.impl.IndexedSizedElementHolderImpl;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class BestFitMoveTest {
+	private final BestFitMove<TestElement> move = new BestFitMove<>();
+
+	private static <H extends SizedElementHolder<TestElement>> H fill(H holder, TestElement... contents) {
+		for (int i = 0; i < contents.length; i++) {
+			if (!contents[i].isEmpty()) {
+				assertTrue(holder.insert(i, contents[i], false).commit());
+			}
+		}
+		return holder;
+	}
+
+	private static SizedElementHolderImpl<TestElement> holder(TestElement... contents) {
+		return fill(new SizedElementHolderImpl<>(contents.length, () -> TestElement.EMPTY), contents);
+	}
+
+	private static IndexedSizedElementHolderImpl<TestElement> indexed(TestElement... contents) {
+		return fill(new IndexedSizedElementHolderImpl<>(contents.length, () -> TestElement.EMPTY, TestElement::typeId), contents);
+	}
+
+	private static List<String> contents(SizedElementHolder<TestElement> holder) {
+		List<String> contents = new ArrayList<>();
+		for (int i = 0; i < holder.getSlots(); i++) {
+			contents.add(holder.get(i).toString());
+		}
+		return contents;
+	}
+
+	@Test
+	public void topsUpPartialStacksBeforeEmptySlots() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 20));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY, TestElement.of(1, 50), TestElement.of(2, 10), TestElement.of(1, 60));
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 20)));
+		// the fullest stack first, then the other one, and only then an empty slot.
+		assertEquals(contents(holder(TestElement.of(1, 2), TestElement.of(1, 64), TestElement.of(2, 10), TestElement.of(1, 64))), contents(to));
+		assertTrue(from.get(0).isEmpty());
+	}
+
+	@Test
+	public void drainsTheSmallestStacksFirst() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 40), TestElement.of(1, 5), TestElement.of(2, 1), TestElement.of(1, 12));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY);
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 20)));
+		assertEquals(contents(holder(TestElement.of(1, 37), TestElement.EMPTY, TestElement.of(2, 1), TestElement.EMPTY)), contents(from));
+		assertEquals(20, to.get(0).getCount());
+	}
+
+	@Test
+	public void usesTheIndexesOfIndexedHolders() {
+		IndexedSizedElementHolderImpl<TestElement> from = indexed(TestElement.of(1, 40), TestElement.of(2, 3), TestElement.of(1, 5));
+		IndexedSizedElementHolderImpl<TestElement> to = indexed(TestElement.EMPTY, TestElement.of(2, 1), TestElement.of(1, 63));
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 10)));
+		assertEquals(contents(holder(TestElement.of(1, 35), TestElement.of(2, 3), TestElement.EMPTY)), contents(from));
+		assertEquals(contents(holder(TestElement.of(1, 9), TestElement.of(2, 1), TestElement.of(1, 64))), contents(to));
+	}
+
+	@Test
+	public void movesNothingIfTheDestinationLacksRoom() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 30), TestElement.of(1, 30));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.of(1, 40), TestElement.of(2, 1));
+		List<String> fromBefore = contents(from);
+		List<String> toBefore = contents(to);
+		// 24 fit, 50 don't.
+		assertFalse(move.move(from, to, () -> TestElement.of(1, 50)));
+		assertEquals(fromBefore, contents(from));
+		assertEquals(toBefore, contents(to));
+		// and nothing is left reserved.
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 24)));
+		assertEquals(64, to.get(0).getCount());
+	}
+
+	@Test
+	public void movesNothingIfTheSourceLacksElements() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 10), TestElement.of(2, 30));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY, TestElement.EMPTY);
+		assertFalse(move.move(from, to, () -> TestElement.of(1, 20)));
+		assertEquals(contents(holder(TestElement.of(1, 10), TestElement.of(2, 30))), contents(from));
+		assertEquals(contents(holder(TestElement.EMPTY, TestElement.EMPTY)), contents(to));
+	}
+}
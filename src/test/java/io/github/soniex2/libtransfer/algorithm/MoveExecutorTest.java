@@ -0,0 +1,116 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class MoveExecutorTest {
+	private static final int HOLDERS = 40;
+
+	private static List<SizedElementHolderImpl<TestElement>> holders() {
+		List<SizedElementHolderImpl<TestElement>> holders = new ArrayList<>();
+		for (int h = 0; h < HOLDERS; h++) {
+			SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+			holder.insert(0, TestElement.of(h % 3, 1 + h), false).commit();
+			holders.add(holder);
+		}
+		return holders;
+	}
+
+	/**
+	 * Random moves, mostly within small clusters of holders, so there are many groups of different sizes.
+	 */
+	private static List<MoveExecutor.Move<TestElement>> moves(List<SizedElementHolderImpl<TestElement>> holders, long seed) {
+		Random random = new Random(seed);
+		List<MoveExecutor.Move<TestElement>> moves = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			int from = random.nextInt(HOLDERS);
+			int to = random.nextInt(100) == 0 ? random.nextInt(HOLDERS) : from / 5 * 5 + random.nextInt(5);
+			TestElement element = TestElement.of(random.nextInt(3), 1 + random.nextInt(8));
+			moves.add(new MoveExecutor.Move<>(holders.get(from), holders.get(to), () -> element));
+		}
+		return moves;
+	}
+
+	private static List<String> contents(List<SizedElementHolderImpl<TestElement>> holders) {
+		List<String> contents = new ArrayList<>();
+		for (SizedElementHolder<TestElement> holder : holders) {
+			for (int i = 0; i < holder.getSlots(); i++) {
+				contents.add(holder.get(i).toString());
+			}
+		}
+		return contents;
+	}
+
+	@Test
+	public void matchesRunningOneAfterAnother() {
+		SimpleMove<TestElement> move = new SimpleMove<>();
+		List<SizedElementHolderImpl<TestElement>> sequential = holders();
+		List<MoveExecutor.Move<TestElement>> sequentialMoves = moves(sequential, 42);
+		boolean[] expected = new boolean[sequentialMoves.size()];
+		for (int i = 0; i < expected.length; i++) {
+			MoveExecutor.Move<TestElement> m = sequentialMoves.get(i);
+			expected[i] = move.move(m.from, m.to, m.filter);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<SizedElementHolderImpl<TestElement>> parallel = holders();
+			boolean[] results = new MoveExecutor<>(move, pool).execute(moves(parallel, 42));
+			assertTrue(Arrays.equals(expected, results));
+			assertEquals(contents(sequential), contents(parallel));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void rethrowsEarliestRuntimeExceptionAfterRunningTheRest() {
+		List<SizedElementHolderImpl<TestElement>> holders = holders();
+		List<MoveExecutor.Move<TestElement>> moves = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			moves.add(new MoveExecutor.Move<>(holders.get(i % HOLDERS), holders.get((i + 1) % HOLDERS), () -> TestElement.of(0, 1)));
+		}
+		int[] ran = new int[1];
+		MoveAlgorithm<TestElement> algorithm = (from, to, filter) -> {
+			synchronized (ran) {
+				ran[0]++;
+			}
+			if (from == holders.get(7) || from == holders.get(3)) {
+				throw new IllegalArgumentException(from == holders.get(3) ? "3" : "7");
+			}
+			return true;
+		};
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			new MoveExecutor<>(algorithm, pool).execute(moves);
+			fail("nothing thrown");
+		} catch (IllegalArgumentException e) {
+			assertEquals("3", e.getMessage());
+			assertEquals(200, ran[0]);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected = AssertionError.class)
+	public void letsErrorsThrough() {
+		List<SizedElementHolderImpl<TestElement>> holders = holders();
+		List<MoveExecutor.Move<TestElement>> moves = new ArrayList<>();
+		moves.add(new MoveExecutor.Move<>(holders.get(0), holders.get(1), () -> TestElement.of(0, 1)));
+		new MoveExecutor<TestElement>((from, to, filter) -> {
+			throw new AssertionError();
+		}).execute(moves);
+	}
+}
@@ -0,0 +1,129 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.MultiSizedElementFilter;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class MultiMoveTest {
+	private final MultiMove<TestElement> move = new MultiMove<>();
+
+	private static SizedElementHolderImpl<TestElement> holder(TestElement... contents) {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(contents.length, () -> TestElement.EMPTY);
+		for (int i = 0; i < contents.length; i++) {
+			if (!contents[i].isEmpty()) {
+				holder.insert(i, contents[i], false).commit();
+			}
+		}
+		return holder;
+	}
+
+	@Test
+	public void fillsPartialStacksBeforeEmptySlots() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 10));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY, TestElement.of(1, 60), TestElement.EMPTY);
+		assertEquals(10, move.move(from, to, MultiSizedElementFilter.matching(e -> true, Long.MAX_VALUE)));
+		assertEquals(6, to.get(0).getCount());
+		assertEquals(64, to.get(1).getCount());
+		assertTrue(to.get(2).isEmpty());
+		assertTrue(from.get(0).isEmpty());
+	}
+
+	@Test
+	public void movesEveryTypeUpToItsLimit() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 30), TestElement.of(2, 30), TestElement.of(1, 30), TestElement.of(3, 5));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY, TestElement.EMPTY, TestElement.EMPTY);
+		MultiSizedElementFilter<TestElement> filter = MultiSizedElementFilter.anyOf(Arrays.asList(TestElement.of(1, 40), TestElement.of(2, 7)));
+		assertEquals(47, move.move(from, to, filter));
+		assertEquals(40, TestElement.total(to, 1));
+		assertEquals(7, TestElement.total(to, 2));
+		assertEquals(0, TestElement.total(to, 3));
+		assertEquals(20, TestElement.total(from, 1));
+		assertEquals(23, TestElement.total(from, 2));
+		assertEquals(5, TestElement.total(from, 3));
+	}
+
+	@Test
+	public void trimsToWhatTheDestinationTakes() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 64), TestElement.of(1, 64));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.of(1, 50), TestElement.of(2, 1));
+		assertEquals(14, move.move(from, to, MultiSizedElementFilter.matching(e -> true, Long.MAX_VALUE)));
+		assertEquals(114, TestElement.total(from, 1));
+		assertEquals(64, TestElement.total(to, 1));
+		// nothing is left reserved.
+		assertEquals(114, from.availableToExtract(0, TestElement.of(1, 1)) + from.availableToExtract(1, TestElement.of(1, 1)));
+	}
+
+	@Test
+	public void invalidatedDestinationMovesNothing() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 10));
+		SizedElementHolderImpl<TestElement> to = holder(TestElement.EMPTY);
+		to.invalidate();
+		assertEquals(0, move.move(from, to, MultiSizedElementFilter.matching(e -> true, Long.MAX_VALUE)));
+		assertEquals(10, from.get(0).getCount());
+		assertEquals(10, from.availableToExtract(0, TestElement.of(1, 1)));
+	}
+
+	@Test
+	public void failedHandOverLeavesNothingReserved() {
+		SizedElementHolderImpl<TestElement> from = holder(TestElement.of(1, 30), TestElement.of(1, 20));
+		// the group asks for the ordinal as it takes each transaction, so this fails partway through handing over.
+		SizedElementHolderImpl<TestElement> to = new SizedElementHolderImpl<TestElement>(2, () -> TestElement.EMPTY) {
+			@Override
+			public long getOrdinal() {
+				throw new UnsupportedOperationException();
+			}
+		};
+		try {
+			move.move(from, to, MultiSizedElementFilter.matching(e -> true, Long.MAX_VALUE));
+			fail();
+		} catch (UnsupportedOperationException expected) {
+		}
+		assertEquals(50, TestElement.total(from, 1));
+		assertEquals(50, from.availableToExtract(0, TestElement.of(1, 1)) + from.availableToExtract(1, TestElement.of(1, 1)));
+		assertEquals(128, to.capacityFor(0, TestElement.of(1, 1)) + to.capacityFor(1, TestElement.of(1, 1)));
+		// and the context's pooled transactions still work.
+		assertEquals(50, move.move(from, holder(TestElement.EMPTY, TestElement.EMPTY), MultiSizedElementFilter.matching(e -> true, Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void racingMovesConserveTotals() throws Exception {
+		SizedElementHolderImpl<TestElement> a = holder(TestElement.of(1, 64), TestElement.of(2, 64), TestElement.EMPTY, TestElement.of(1, 3));
+		SizedElementHolderImpl<TestElement> b = holder(TestElement.EMPTY, TestElement.of(2, 9), TestElement.EMPTY, TestElement.EMPTY);
+		MultiSizedElementFilter<TestElement> filter = MultiSizedElementFilter.matching(e -> true, 20);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] futures = new Future<?>[4];
+			for (int t = 0; t < futures.length; t++) {
+				boolean forward = t % 2 == 0;
+				futures[t] = pool.submit(() -> {
+					for (int i = 0; i < 5000; i++) {
+						if (forward) {
+							move.move(a, b, filter);
+						} else {
+							move.move(b, a, filter);
+						}
+					}
+				});
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(67, TestElement.total(a, 1) + TestElement.total(b, 1));
+		assertEquals(73, TestElement.total(a, 2) + TestElement.total(b, 2));
+	}
+}
@@ -0,0 +1,86 @@
+package io.github.soniex2.libtransfer.algorithm;
+
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.impl.SizedElementHolderImpl;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class SimpleMoveTest {
+	private final SimpleMove<TestElement> move = new SimpleMove<>();
+
+	@Test
+	public void movesAllOrNothing() {
+		SizedElementHolderImpl<TestElement> from = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		from.insert(0, TestElement.of(1, 30), false).commit();
+		from.insert(1, TestElement.of(1, 30), false).commit();
+		SizedElementHolderImpl<TestElement> to = new SizedElementHolderImpl<>(1, () -> TestElement.EMPTY);
+		to.insert(0, TestElement.of(1, 20), false).commit();
+		assertFalse(move.move(from, to, () -> TestElement.of(1, 50)));
+		assertEquals(60, TestElement.total(from, 1));
+		assertEquals(44, to.capacityFor(0, TestElement.of(1, 1)));
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 44)));
+		assertEquals(16, TestElement.total(from, 1));
+		assertEquals(64, TestElement.total(to, 1));
+	}
+
+	@Test
+	public void doesntProbeHoldersWithReservingProbes() {
+		SizedElementHolderImpl<TestElement> backing = new SizedElementHolderImpl<>(8, () -> TestElement.EMPTY);
+		backing.insert(0, TestElement.of(1, 10), false).commit();
+		Counting from = new Counting(backing);
+		SizedElementHolderImpl<TestElement> to = new SizedElementHolderImpl<>(1, () -> TestElement.EMPTY);
+		assertTrue(move.move(from, to, () -> TestElement.of(1, 10)));
+		// the first slot had everything, so it's the only one reserved. probing would have reserved them all.
+		assertEquals(1, from.extractions);
+		assertEquals(10, to.get(0).getCount());
+	}
+
+	/**
+	 * A holder with the default, reserving, probes, which counts the extractions opened on it.
+	 */
+	private static final class Counting implements SizedElementHolder<TestElement> {
+		private final SizedElementHolder<TestElement> holder;
+		int extractions;
+
+		Counting(SizedElementHolder<TestElement> holder) {
+			this.holder = holder;
+		}
+
+		@Override
+		public TestElement get(int slot) {
+			return holder.get(slot);
+		}
+
+		@Override
+		public Transaction<TestElement> extract(int slot, TestElement element, boolean strong) {
+			extractions++;
+			return holder.extract(slot, element, strong);
+		}
+
+		@Override
+		public Transaction<TestElement> insert(int slot, TestElement element, boolean strong) {
+			return holder.insert(slot, element, strong);
+		}
+
+		@Override
+		public int getSlotLimit(int slot) {
+			return holder.getSlotLimit(slot);
+		}
+
+		@Override
+		public int getSlots() {
+			return holder.getSlots();
+		}
+
+		@Override
+		public boolean isConcurrent() {
+			return holder.isConcurrent();
+		}
+	}
+}
@@ -1,6 +1,6 @@
 package io.github.soniex2.libtransfer.demo;
 
-import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.CachedSizedElement;
 import io.github.soniex2.libtransfer.SizedElementFilter;
 import io.github.soniex2.libtransfer.SizedElementHolder;
 import io.github.soniex2.libtransfer.algorithm.SimpleMove;
@@ -24,46 +24,45 @@ public class LibtransferDemo {
 		if (!filter.get().isEmpty()) {
 			out.insert(0, filter.get().withCount(62), in.isConcurrent()).commit();
 		}
-		System.out.println(in.get(0).count);
-		System.out.println(out.get(0).count);
-		System.out.println(out.get(1).count);
+		System.out.println(in.get(0).getCount());
+		System.out.println(out.get(0).getCount());
+		System.out.println(out.get(1).getCount());
 		ok = new SimpleMove<MyElement>().move(in, out, filter);
 		System.out.println("ok = " + ok);
-		System.out.println(in.get(0).count);
-		System.out.println(out.get(0).count);
-		System.out.println(out.get(1).count);
+		System.out.println(in.get(0).getCount());
+		System.out.println(out.get(0).getCount());
+		System.out.println(out.get(1).getCount());
 	}
 
-	public static class MyElement implements SizedElement<MyElement> {
+	public static class MyElement extends CachedSizedElement<MyElement> {
+		private static final InstanceCache<MyElement> INSTANCES = new InstanceCache<>(1024);
 		public static final MyElement EMPTY = new MyElement();
 
 		private final int type;
-		private final int count;
 
 		private MyElement() {
+			super(0);
 			type = -1;
-			count = 0;
 		}
 
 		private MyElement(int type, int count) {
+			super(INSTANCES, type, count);
 			if (type < 0 || count < 1 || count > getMaxCount()) {
 				throw new IllegalArgumentException();
 			}
 			this.type = type;
-			this.count = count;
 		}
 
 		private MyElement(MyElement myElement, int count) {
-			this(myElement.type, count);
-		}
-
-		@Override
-		public int getCount() {
-			return count;
+			super(myElement, count);
+			if (count < 1 || count > getMaxCount()) {
+				throw new IllegalArgumentException();
+			}
+			this.type = myElement.type;
 		}
 
 		@Override
-		public MyElement withCount(int count) {
+		protected MyElement create(int count) {
 			if (count == 0) {
 				return EMPTY;
 			}
@@ -74,7 +73,7 @@ public class LibtransferDemo {
 		}
 
 		@Override
-		public boolean hasSameType(MyElement other) {
+		protected boolean isSameType(MyElement other) {
 			return type == other.type;
 		}
 
@@ -95,7 +94,8 @@ public class LibtransferDemo {
 			if (count == 0) {
 				return EMPTY;
 			}
-			return new MyElement(type, count);
+			MyElement cached = INSTANCES.get(type, count);
+			return cached != null ? cached : new MyElement(type, count).withCount(count);
 		}
 
 		public static MyElement of(MyElement type, int count) {
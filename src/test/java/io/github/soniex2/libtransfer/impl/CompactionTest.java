@@ -0,0 +1,97 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class CompactionTest {
+	@Test
+	public void mergesPartialStacksTowardsTheStart() {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(8, () -> TestElement.EMPTY);
+		for (int i = 0; i < 8; i++) {
+			holder.insert(i, TestElement.of(i & 1, 20), false).commit();
+		}
+		assertEquals(4, holder.compact());
+		assertEquals(TestElement.of(0, 64).toString(), holder.get(0).toString());
+		assertEquals(TestElement.of(1, 64).toString(), holder.get(1).toString());
+		assertEquals(80, TestElement.total(holder, 0));
+		assertEquals(80, TestElement.total(holder, 1));
+	}
+
+	@Test
+	public void survivesClearsAndInvalidation() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(256, () -> TestElement.EMPTY);
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> clearing = pool.submit(() -> {
+				for (int round = 0; round < 200; round++) {
+					holder.clearAndResize(64 + (round % 3) * 96);
+					for (int i = 0; i < holder.getSlots(); i += 2) {
+						holder.insert(i, TestElement.of(0, 5), false).commit();
+					}
+					if (round % 10 == 0) {
+						holder.invalidate();
+					}
+				}
+				done.set(true);
+			});
+			while (!done.get()) {
+				holder.compact(64, Long.MAX_VALUE);
+			}
+			clearing.get(30, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void backgroundCompactionConservesTotals() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(128, () -> TestElement.EMPTY);
+		for (int i = 0; i < 128; i++) {
+			holder.insert(i, TestElement.of(i % 3, 7), false).commit();
+		}
+		BackgroundCompactor compactor = new BackgroundCompactor(holder, 16, TimeUnit.MILLISECONDS.toNanos(1), 1);
+		try {
+			// move elements around while compaction runs, one slot's worth at a time.
+			for (int round = 0; round < 20000; round++) {
+				int from = round % 128;
+				int to = (round * 31) % 128;
+				TestElement value = holder.get(from);
+				if (value.isEmpty() || from == to) {
+					continue;
+				}
+				Transaction<TestElement> in = holder.insert(to, value.withCount(1), true);
+				if (in.get().isEmpty()) {
+					in.revert();
+					continue;
+				}
+				Transaction<TestElement> ex = holder.extract(from, value.withCount(1), true);
+				if (ex.get().isEmpty()) {
+					ex.revert();
+					in.revert();
+					continue;
+				}
+				ex.commit();
+				in.commit();
+			}
+		} finally {
+			compactor.close();
+		}
+		Thread.sleep(50);
+		for (int type = 0; type < 3; type++) {
+			assertEquals(type == 2 ? 42 * 7 : 43 * 7, TestElement.total(holder, type));
+		}
+	}
+}
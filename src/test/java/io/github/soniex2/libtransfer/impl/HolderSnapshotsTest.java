@@ -0,0 +1,112 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionStatus;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class HolderSnapshotsTest {
+	private static byte[] write(SizedElementHolderImpl<TestElement> holder) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		HolderSnapshots.write(holder, TestElement.CODEC, Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static void read(SizedElementHolderImpl<TestElement> holder, byte[] bytes) throws IOException {
+		HolderSnapshots.read(holder, TestElement.CODEC, Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test
+	public void roundTrips() throws IOException {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(10000, () -> TestElement.EMPTY);
+		for (int i = 0; i < 10000; i += 1 + i % 7) {
+			holder.insert(i, TestElement.of(i % 5, 1 + i % 64), false).commit();
+		}
+		SizedElementHolderImpl<TestElement> copy = new SizedElementHolderImpl<>(3, () -> TestElement.EMPTY);
+		read(copy, write(holder));
+		assertEquals(10000, copy.getSlots());
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(holder.get(i).toString(), copy.get(i).toString());
+		}
+	}
+
+	@Test
+	public void invalidatesOpenTransactions() throws IOException {
+		SizedElementHolderImpl<TestElement> source = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+		source.insert(0, TestElement.of(1, 10), false).commit();
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+		Transaction<TestElement> open = holder.insert(0, TestElement.of(1, 30), false);
+		read(holder, write(source));
+		assertEquals(TransactionStatus.INVALIDATED, open.getStatus());
+		// nothing reserved before the restore survives it.
+		assertEquals(54, holder.capacityFor(0, TestElement.of(1, 1)));
+		holder.insert(0, TestElement.of(1, 54), false).commit();
+		assertEquals(64, holder.get(0).getCount());
+	}
+
+	@Test
+	public void rejectsTruncatedSnapshot() throws IOException {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(100, () -> TestElement.EMPTY);
+		for (int i = 0; i < 100; i++) {
+			holder.insert(i, TestElement.of(0, 1), false).commit();
+		}
+		byte[] bytes = write(new SizedElementHolderImpl<>(200, () -> TestElement.EMPTY));
+		try {
+			read(holder, Arrays.copyOf(bytes, bytes.length - 1));
+			fail();
+		} catch (IOException expected) {
+		}
+		// the snapshot is checked before anything is cleared.
+		assertEquals(100, holder.getSlots());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1, holder.get(i).getCount());
+		}
+	}
+
+	@Test
+	public void readsWithoutBlockingTransactions() throws Exception {
+		SizedElementHolderImpl<TestElement> source = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+		source.insert(1, TestElement.of(2, 3), false).commit();
+		ReadableByteChannel snapshot = Channels.newChannel(new ByteArrayInputStream(write(source)));
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+		ReadableByteChannel slow = new ReadableByteChannel() {
+			@Override
+			public int read(ByteBuffer dst) throws IOException {
+				try {
+					// another thread can still commit while the snapshot is being read.
+					assertTrue(CompletableFuture.supplyAsync(() -> holder.insert(0, TestElement.of(1, 1), false).commit()).get(1, TimeUnit.SECONDS));
+				} catch (Exception e) {
+					throw new IOException(e);
+				}
+				return snapshot.read(dst);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		HolderSnapshots.read(holder, TestElement.CODEC, slow);
+		assertTrue(holder.get(0).isEmpty());
+		assertEquals(TestElement.of(2, 3).toString(), holder.get(1).toString());
+	}
+}
@@ -0,0 +1,131 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.IndexedSizedElementHolder;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the indexes of {@link IndexedSizedElementHolderImpl} and {@link TypedSizedElementHolderImpl} agree
+ * with the slots themselves.
+ *
+ * @author soniex2
+ */
+public class IndexedHoldersTest {
+	private static final int SLOTS = 32;
+	private static final int TYPES = 3;
+
+	private static IndexedSizedElementHolderImpl<TestElement> indexed() {
+		return new IndexedSizedElementHolderImpl<>(SLOTS, () -> TestElement.EMPTY, TestElement::typeId);
+	}
+
+	private static TypedSizedElementHolderImpl<TestElement> typed() {
+		return new TypedSizedElementHolderImpl<>(SLOTS, () -> TestElement.EMPTY);
+	}
+
+	@Test
+	public void indexedHolderStaysConsistentUnderRacingCommits() throws Exception {
+		IndexedSizedElementHolderImpl<TestElement> holder = indexed();
+		churn(holder);
+		checkConsistent(holder);
+	}
+
+	@Test
+	public void typedHolderStaysConsistentUnderRacingCommits() throws Exception {
+		TypedSizedElementHolderImpl<TestElement> holder = typed();
+		churn(holder);
+		checkConsistent(holder);
+	}
+
+	@Test
+	public void indexesFollowClears() {
+		for (SizedElementHolderImpl<TestElement> holder : Arrays.<SizedElementHolderImpl<TestElement>>asList(indexed(), typed())) {
+			holder.insert(3, TestElement.of(1, 64), false).commit();
+			holder.insert(4, TestElement.of(1, 5), false).commit();
+			IndexedSizedElementHolder<TestElement> index = (IndexedSizedElementHolder<TestElement>) holder;
+			assertArrayEquals(new int[]{3, 4}, index.slotsContaining(TestElement.of(1, 1)));
+			assertEquals(4, index.slotsAccepting(TestElement.of(1, 1))[0]);
+			holder.clearAndResize(8);
+			assertArrayEquals(new int[0], index.slotsContaining(TestElement.of(1, 1)));
+			assertEquals(8 * 64, index.capacityFor(TestElement.of(1, 1)));
+			checkConsistent(holder);
+		}
+	}
+
+	private static void churn(SizedElementHolderImpl<TestElement> holder) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(pool.submit(() -> {
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int i = 0; i < 20000; i++) {
+						int slot = random.nextInt(SLOTS);
+						Transaction<TestElement> transaction;
+						if (random.nextBoolean()) {
+							transaction = holder.insert(slot, TestElement.of(slot % TYPES, 1 + random.nextInt(64)), false);
+						} else {
+							TestElement value = holder.get(slot);
+							if (value.isEmpty()) {
+								continue;
+							}
+							transaction = holder.extract(slot, value.withCount(1 + random.nextInt(value.getCount())), false);
+						}
+						if (random.nextInt(4) == 0) {
+							transaction.revert();
+						} else {
+							transaction.commit();
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void checkConsistent(SizedElementHolderImpl<TestElement> holder) {
+		IndexedSizedElementHolder<TestElement> index = (IndexedSizedElementHolder<TestElement>) holder;
+		for (int type = 0; type < TYPES; type++) {
+			TestElement probe = TestElement.of(type, 1);
+			List<Integer> containing = new ArrayList<>();
+			List<Integer> partial = new ArrayList<>();
+			int empty = 0;
+			long capacity = 0;
+			for (int slot = 0; slot < holder.getSlots(); slot++) {
+				TestElement value = holder.get(slot);
+				if (value.isEmpty()) {
+					empty++;
+				} else if (value.typeId() == type) {
+					containing.add(slot);
+					if (value.getCount() < TestElement.MAX_COUNT) {
+						partial.add(slot);
+					}
+				}
+				capacity += holder.capacityFor(slot, probe);
+			}
+			assertEquals(containing.toString(), Arrays.toString(index.slotsContaining(probe)));
+			assertEquals(capacity, index.capacityFor(probe));
+			// every partial slot, in order, then as many empty ones as a single element needs.
+			int[] all = index.slotsAccepting(probe);
+			for (int i = 0; i < partial.size(); i++) {
+				assertEquals((int) partial.get(i), all[i]);
+			}
+			assertEquals(partial.size() + (empty > 0 ? 1 : 0), all.length);
+		}
+	}
+}
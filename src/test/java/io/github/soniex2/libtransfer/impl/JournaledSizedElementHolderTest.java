@@ -0,0 +1,199 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class JournaledSizedElementHolderTest {
+	private static final int SLOTS = 16;
+	// long enough that nothing is synced or folded in the background while a test runs.
+	private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		delete(directory);
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+				for (Path child : stream) {
+					delete(child);
+				}
+			}
+		}
+		Files.deleteIfExists(path);
+	}
+
+	private JournaledSizedElementHolder<TestElement> open(Path directory, int segmentRecords) throws IOException {
+		return new JournaledSizedElementHolder<>(directory, SLOTS, () -> TestElement.EMPTY, TestElement.CODEC, new ReentrantReadWriteLock(), segmentRecords, NEVER);
+	}
+
+	private static List<String> contents(JournaledSizedElementHolder<TestElement> holder) {
+		List<String> contents = new ArrayList<>();
+		for (int i = 0; i < holder.getSlots(); i++) {
+			contents.add(holder.get(i).toString());
+		}
+		return contents;
+	}
+
+	@Test
+	public void reopensWhatWasClosed() throws IOException {
+		List<String> expected;
+		try (JournaledSizedElementHolder<TestElement> holder = open(directory, 64)) {
+			for (int i = 0; i < 200; i++) {
+				holder.insert(i % SLOTS, TestElement.of(i % SLOTS % 3, 1), false).commit();
+			}
+			holder.extract(5, TestElement.of(2, 13), false).commit();
+			expected = contents(holder);
+		}
+		try (JournaledSizedElementHolder<TestElement> holder = open(directory, 64)) {
+			assertEquals(expected, contents(holder));
+		}
+	}
+
+	@Test
+	public void recoversFromCrashAfterRacingCommits() throws Exception {
+		JournaledSizedElementHolder<TestElement> holder = open(directory, 256);
+		Path crashed = Files.createTempDirectory("crashed");
+		try {
+			ExecutorService pool = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					futures.add(pool.submit(() -> churn(holder, 20000)));
+				}
+				for (Future<?> future : futures) {
+					future.get(60, TimeUnit.SECONDS);
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+			List<String> expected = contents(holder);
+			// the process "crashes" here: the files are taken as they are, without closing the journal.
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path file : stream) {
+					Files.copy(file, crashed.resolve(file.getFileName()));
+				}
+			}
+			try (JournaledSizedElementHolder<TestElement> recovered = open(crashed, 256)) {
+				assertEquals(expected, contents(recovered));
+			}
+		} finally {
+			holder.close();
+			delete(crashed);
+		}
+	}
+
+	@Test
+	public void failedRestoreLeavesTheJournalIntact() throws IOException {
+		List<String> expected;
+		try (JournaledSizedElementHolder<TestElement> holder = open(directory, 64)) {
+			holder.insert(3, TestElement.of(1, 7), false).commit();
+			expected = contents(holder);
+		}
+		PackedElementCodec<TestElement> broken = new PackedElementCodec<TestElement>() {
+			@Override
+			public int getTypeId(TestElement element) {
+				return element.typeId();
+			}
+
+			@Override
+			public TestElement decode(int typeId, int count) {
+				return null;
+			}
+		};
+		try {
+			new JournaledSizedElementHolder<>(directory, SLOTS, () -> TestElement.EMPTY, broken, new ReentrantReadWriteLock(), 64, NEVER);
+			fail();
+		} catch (NullPointerException e) {
+		}
+		try (JournaledSizedElementHolder<TestElement> holder = open(directory, 64)) {
+			assertEquals(expected, contents(holder));
+		}
+	}
+
+	@Test
+	public void journalsCloseBeforeStarting() throws IOException {
+		try (CommitJournal journal = new CommitJournal(directory, 4)) {
+			assertNull(journal.recover());
+		}
+	}
+
+	@Test
+	public void replayKeepsTheLastRecordPerSlot() throws IOException {
+		try (CommitJournal journal = new CommitJournal(directory, 4)) {
+			assertNull(journal.recover());
+			journal.start(NEVER);
+			journal.resized(2);
+			journal.append(0, 1, 5);
+			journal.append(0, 0, 0);
+			journal.append(1, 7, 9);
+			// across a segment boundary.
+			journal.append(0, 2, 3);
+			journal.append(1, 7, 4);
+		}
+		try (CommitJournal journal = new CommitJournal(directory, 4)) {
+			CommitJournal.State state = journal.recover();
+			assertEquals(2, state.size);
+			assertEquals(2, state.types[0]);
+			assertEquals(3, state.counts[0]);
+			assertEquals(7, state.types[1]);
+			assertEquals(4, state.counts[1]);
+			journal.start(NEVER);
+		}
+	}
+
+	/**
+	 * Commit random small moves between slots, with every slot being fought over by every thread.
+	 */
+	private static void churn(JournaledSizedElementHolder<TestElement> holder, int rounds) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int i = 0; i < rounds; i++) {
+			int slot = random.nextInt(SLOTS);
+			TestElement value = holder.get(slot);
+			if (value.isEmpty() || random.nextBoolean()) {
+				Transaction<TestElement> in = holder.insert(slot, TestElement.of(slot % 3, 1 + random.nextInt(4)), false);
+				if (!in.get().isEmpty()) {
+					in.commit();
+				} else {
+					in.revert();
+				}
+			} else {
+				Transaction<TestElement> ex = holder.extract(slot, value.withCount(Math.min(value.getCount(), 1 + random.nextInt(4))), false);
+				if (!ex.get().isEmpty()) {
+					ex.commit();
+				} else {
+					ex.revert();
+				}
+			}
+		}
+	}
+}
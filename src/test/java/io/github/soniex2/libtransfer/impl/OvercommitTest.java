@@ -0,0 +1,61 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.OvercommitTransaction;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.TransactionStatus;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class OvercommitTest {
+	private static SizedElementHolderImpl<TestElement> holderWith(TestElement element) {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		holder.insert(0, element, false).commit();
+		return holder;
+	}
+
+	@Test
+	public void revertingBeforeInitReservesNothing() {
+		SizedElementHolderImpl<TestElement> holder = holderWith(TestElement.of(1, 10));
+		OvercommitTransaction<TestElement> tx = holder.extractOvercommit(0, TestElement.of(1, 10));
+		assertEquals(10, tx.get().getCount());
+		// nothing reserved, so everything can still be taken.
+		assertEquals(10, holder.availableToExtract(0, TestElement.of(1, 1)));
+		tx.revert();
+		assertEquals(TransactionStatus.REVERTED, tx.getStatus());
+		assertEquals(TestElement.of(1, 10).toString(), holder.get(0).toString());
+	}
+
+	@Test
+	public void initReserves() {
+		SizedElementHolderImpl<TestElement> holder = holderWith(TestElement.of(1, 10));
+		OvercommitTransaction<TestElement> tx = holder.extractOvercommit(0, TestElement.of(1, 4));
+		tx.init();
+		assertEquals(6, holder.availableToExtract(0, TestElement.of(1, 1)));
+		assertTrue(tx.commit());
+		assertEquals(TestElement.of(1, 6).toString(), holder.get(0).toString());
+	}
+
+	@Test
+	public void commitFailsIfThePeekedElementsWereTaken() {
+		SizedElementHolderImpl<TestElement> holder = holderWith(TestElement.of(1, 10));
+		OvercommitTransaction<TestElement> tx = holder.extractOvercommit(0, TestElement.of(1, 10));
+		assertTrue(holder.extract(0, TestElement.of(1, 5), false).commit());
+		assertFalse(tx.commit());
+		assertEquals(TransactionStatus.REVERTED, tx.getStatus());
+		assertEquals(TestElement.of(1, 5).toString(), holder.get(0).toString());
+	}
+
+	@Test
+	public void commitFailsIfThePeekedRoomWasTaken() {
+		SizedElementHolderImpl<TestElement> holder = holderWith(TestElement.EMPTY);
+		OvercommitTransaction<TestElement> tx = holder.insertOvercommit(1, TestElement.of(1, 64));
+		assertEquals(64, tx.get().getCount());
+		assertTrue(holder.insert(1, TestElement.of(2, 1), false).commit());
+		assertFalse(tx.commit());
+		assertEquals(TestElement.of(2, 1).toString(), holder.get(1).toString());
+	}
+}
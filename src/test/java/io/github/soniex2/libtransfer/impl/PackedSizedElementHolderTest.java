@@ -0,0 +1,180 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElement;
+import io.github.soniex2.libtransfer.SizedElementHolder;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link PackedSizedElementHolder} behaves like {@link SizedElementHolderImpl}, within its limits.
+ *
+ * @author soniex2
+ */
+public class PackedSizedElementHolderTest {
+	private static final int SLOTS = 6;
+	private static final int TYPES = 3;
+
+	@Test
+	public void behavesLikeSizedElementHolderImpl() {
+		for (long seed = 0; seed < 50; seed++) {
+			compare(new Random(seed));
+		}
+	}
+
+	private static void compare(Random random) {
+		SizedElementHolderImpl<TestElement> expected = new SizedElementHolderImpl<>(SLOTS, () -> TestElement.EMPTY);
+		PackedSizedElementHolder<TestElement> actual = new PackedSizedElementHolder<>(SLOTS, TestElement.EMPTY, TestElement.CODEC);
+		// transactions opened on each holder, in the same order.
+		List<Transaction<TestElement>> expectedOpen = new ArrayList<>();
+		List<Transaction<TestElement>> actualOpen = new ArrayList<>();
+		for (int step = 0; step < 500; step++) {
+			String where = "step " + step;
+			int op = random.nextInt(10);
+			if (op < 5 || expectedOpen.isEmpty()) {
+				int slot = random.nextInt(expected.getSlots());
+				TestElement element = TestElement.of(random.nextInt(TYPES), 1 + random.nextInt(TestElement.MAX_COUNT));
+				boolean insert = random.nextBoolean();
+				boolean strong = random.nextInt(4) == 0;
+				Transaction<TestElement> e = insert ? expected.insert(slot, element, strong) : expected.extract(slot, element, strong);
+				Transaction<TestElement> a = insert ? actual.insert(slot, element, strong) : actual.extract(slot, element, strong);
+				assertEquals(where, e.get().toString(), a.get().toString());
+				assertEquals(where, e.isStrong(), a.isStrong());
+				expectedOpen.add(e);
+				actualOpen.add(a);
+			} else if (op < 9) {
+				int i = random.nextInt(expectedOpen.size());
+				boolean commit = op < 7;
+				assertEquals(where, finish(expectedOpen.remove(i), commit), finish(actualOpen.remove(i), commit));
+			} else {
+				// invalidation waits for strong transactions, so finish those first.
+				for (int i = expectedOpen.size() - 1; i >= 0; i--) {
+					if (expectedOpen.get(i).isStrong()) {
+						assertEquals(where, finish(expectedOpen.remove(i), true), finish(actualOpen.remove(i), true));
+					}
+				}
+				if (random.nextBoolean()) {
+					expected.invalidate();
+					actual.invalidate();
+				} else {
+					int size = 1 + random.nextInt(SLOTS);
+					expected.clearAndResize(size);
+					actual.clearAndResize(size);
+				}
+			}
+			assertSameContents(where, expected, actual);
+			for (int i = 0; i < expectedOpen.size(); i++) {
+				assertEquals(where, expectedOpen.get(i).getStatus(), actualOpen.get(i).getStatus());
+			}
+		}
+	}
+
+	private static String finish(Transaction<TestElement> transaction, boolean commit) {
+		try {
+			return String.valueOf(commit ? transaction.commit() : transaction.revert()) + " " + transaction.getStatus();
+		} catch (IllegalStateException e) {
+			return "IllegalStateException " + transaction.getStatus();
+		}
+	}
+
+	private static void assertSameContents(String where, SizedElementHolder<TestElement> expected, SizedElementHolder<TestElement> actual) {
+		assertEquals(where, expected.getSlots(), actual.getSlots());
+		for (int slot = 0; slot < expected.getSlots(); slot++) {
+			assertEquals(where, expected.get(slot).toString(), actual.get(slot).toString());
+			for (int type = 0; type < TYPES; type++) {
+				TestElement element = TestElement.of(type, 1);
+				assertEquals(where, expected.availableToExtract(slot, element), actual.availableToExtract(slot, element));
+				assertEquals(where, expected.capacityFor(slot, element), actual.capacityFor(slot, element));
+			}
+		}
+	}
+
+	@Test
+	public void acceptsTypeIdsUpToTheLimit() {
+		PackedSizedElementHolder<TestElement> holder = new PackedSizedElementHolder<>(1, TestElement.EMPTY, TestElement.CODEC);
+		TestElement element = TestElement.of(PackedSizedElementHolder.MAX_TYPE_ID, 5);
+		assertTrue(holder.insert(0, element, false).commit());
+		assertEquals(element.toString(), holder.get(0).toString());
+		assertEquals(5, holder.availableToExtract(0, element));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTypeIdsPastTheLimit() {
+		PackedSizedElementHolder<TestElement> holder = new PackedSizedElementHolder<>(1, TestElement.EMPTY, TestElement.CODEC);
+		holder.insert(0, TestElement.of(PackedSizedElementHolder.MAX_TYPE_ID + 1, 1), false);
+	}
+
+	@Test
+	public void capsSlotsAtTheCountLimit() {
+		PackedSizedElementHolder<Bulk> holder = new PackedSizedElementHolder<>(2, Bulk.EMPTY, Bulk.CODEC);
+		assertEquals(PackedSizedElementHolder.MAX_COUNT, holder.getSlotLimit(0));
+		assertEquals(PackedSizedElementHolder.MAX_COUNT, holder.capacityFor(0, new Bulk(1, 1)));
+		Transaction<Bulk> insert = holder.insert(0, new Bulk(1, 100000), false);
+		assertEquals(PackedSizedElementHolder.MAX_COUNT, insert.get().getCount());
+		assertTrue(insert.commit());
+		assertEquals(PackedSizedElementHolder.MAX_COUNT, holder.get(0).getCount());
+		assertEquals(0, holder.capacityFor(0, new Bulk(1, 1)));
+		assertTrue(holder.insert(0, new Bulk(1, 1), false).get().isEmpty());
+		Transaction<Bulk> extract = holder.extract(0, new Bulk(1, 100000), false);
+		assertEquals(PackedSizedElementHolder.MAX_COUNT, extract.get().getCount());
+		assertTrue(extract.commit());
+		assertTrue(holder.get(0).isEmpty());
+	}
+
+	/**
+	 * An element whose stacks can grow past what a packed slot holds.
+	 */
+	private static final class Bulk implements SizedElement<Bulk> {
+		static final Bulk EMPTY = new Bulk(0, 0);
+		static final PackedElementCodec<Bulk> CODEC = new PackedElementCodec<Bulk>() {
+			@Override
+			public int getTypeId(Bulk element) {
+				return element.type;
+			}
+
+			@Override
+			public Bulk decode(int typeId, int count) {
+				return new Bulk(typeId, count);
+			}
+		};
+
+		private final int type;
+		private final int count;
+
+		Bulk(int type, int count) {
+			this.type = type;
+			this.count = count;
+		}
+
+		@Override
+		public int getCount() {
+			return count;
+		}
+
+		@Override
+		public Bulk withCount(int count) {
+			return count == 0 ? EMPTY : new Bulk(type, count);
+		}
+
+		@Override
+		public boolean hasSameType(Bulk other) {
+			return !isEmpty() && !other.isEmpty() && type == other.type;
+		}
+
+		@Override
+		public int getMaxCount() {
+			return Integer.MAX_VALUE;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return count == 0;
+		}
+	}
+}
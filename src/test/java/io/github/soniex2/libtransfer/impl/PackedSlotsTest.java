@@ -0,0 +1,70 @@
+package io.github.soniex2.libtransfer.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class PackedSlotsTest {
+	@Test
+	public void heapStartsZeroedAndCompares() {
+		checkBasics(new PackedSlots.Heap(100));
+	}
+
+	@Test
+	public void offHeapStartsZeroedAndCompares() {
+		checkBasics(new PackedSlots.OffHeap(100));
+	}
+
+	@Test
+	public void offHeapCountsEveryConcurrentIncrement() throws Exception {
+		PackedSlots slots = new PackedSlots.OffHeap(4);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(pool.submit(() -> {
+					for (int i = 0; i < 10000; i++) {
+						int slot = i & 3;
+						long old;
+						do {
+							old = slots.get(slot);
+						} while (!slots.compareAndSet(slot, old, old + 1));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		for (int slot = 0; slot < 4; slot++) {
+			assertEquals(10000, slots.get(slot));
+		}
+	}
+
+	private static void checkBasics(PackedSlots slots) {
+		assertEquals(100, slots.length());
+		for (int slot = 0; slot < 100; slot++) {
+			assertEquals(0, slots.get(slot));
+		}
+		assertTrue(slots.compareAndSet(99, 0, -1L));
+		assertFalse(slots.compareAndSet(99, 0, 5));
+		assertEquals(-1L, slots.get(99));
+		assertEquals(0, slots.get(98));
+		try {
+			slots.get(100);
+			fail();
+		} catch (IndexOutOfBoundsException expected) {
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SlotChange;
+import io.github.soniex2.libtransfer.TestElement;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class SlotChangePublisherTest {
+	private final AtomicReferenceArray<TestElement> slots = new AtomicReferenceArray<>(new TestElement[]{TestElement.EMPTY, TestElement.EMPTY, TestElement.EMPTY});
+	// batches are only put together when run() is called.
+	private final Queue<Runnable> tasks = new ArrayDeque<>();
+	private final SlotChangePublisher<TestElement> publisher = new SlotChangePublisher<>(slots::get, tasks::add);
+
+	private void commit(int slot, TestElement value) {
+		publisher.changed(slot, slots.getAndSet(slot, value));
+	}
+
+	private void run() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	private static String describe(List<SlotChange<TestElement>> batch) {
+		List<String> changes = new ArrayList<>();
+		for (SlotChange<TestElement> change : batch) {
+			changes.add(change.getSlot() + ": " + change.getOldValue() + " -> " + change.getNewValue());
+		}
+		changes.sort(null);
+		return changes.toString();
+	}
+
+	private static String describe(int slot, TestElement oldValue, TestElement newValue) {
+		return slot + ": " + oldValue + " -> " + newValue;
+	}
+
+	@Test
+	public void coalescesRepeatedCommitsToASlot() {
+		Recorder recorder = new Recorder();
+		publisher.subscribe(recorder);
+		recorder.subscription.request(Long.MAX_VALUE);
+		run();
+		for (int i = 1; i <= 10; i++) {
+			commit(0, TestElement.of(1, i));
+		}
+		commit(1, TestElement.of(2, 5));
+		// changed and changed back, so there's nothing to publish.
+		commit(2, TestElement.of(3, 1));
+		commit(2, TestElement.EMPTY);
+		// a single drain, however many commits.
+		assertEquals(1, tasks.size());
+		run();
+		assertEquals(1, recorder.batches.size());
+		assertEquals("[" + describe(0, TestElement.EMPTY, TestElement.of(1, 10)) + ", " + describe(1, TestElement.EMPTY, TestElement.of(2, 5)) + "]", describe(recorder.batches.get(0)));
+	}
+
+	@Test
+	public void holdsChangesUntilRequested() {
+		Recorder recorder = new Recorder();
+		publisher.subscribe(recorder);
+		commit(0, TestElement.of(1, 1));
+		run();
+		assertTrue(recorder.batches.isEmpty());
+		// merged into what's pending.
+		commit(0, TestElement.of(1, 2));
+		commit(1, TestElement.of(2, 2));
+		run();
+		assertTrue(recorder.batches.isEmpty());
+		recorder.subscription.request(1);
+		run();
+		assertEquals(1, recorder.batches.size());
+		assertEquals("[" + describe(0, TestElement.EMPTY, TestElement.of(1, 2)) + ", " + describe(1, TestElement.EMPTY, TestElement.of(2, 2)) + "]", describe(recorder.batches.get(0)));
+		// that was the only batch requested.
+		commit(0, TestElement.of(1, 3));
+		run();
+		assertEquals(1, recorder.batches.size());
+		recorder.subscription.request(1);
+		run();
+		assertEquals(2, recorder.batches.size());
+		assertEquals("[" + describe(0, TestElement.of(1, 2), TestElement.of(1, 3)) + "]", describe(recorder.batches.get(1)));
+		assertTrue(recorder.errors.isEmpty());
+	}
+
+	@Test
+	public void nonPositiveRequestFails() {
+		Recorder recorder = new Recorder();
+		publisher.subscribe(recorder);
+		recorder.subscription.request(0);
+		run();
+		assertEquals(1, recorder.errors.size());
+		assertTrue(recorder.errors.get(0) instanceof IllegalArgumentException);
+		// nothing afterwards.
+		recorder.subscription.request(1);
+		commit(0, TestElement.of(1, 1));
+		run();
+		assertTrue(recorder.batches.isEmpty());
+		assertEquals(1, recorder.errors.size());
+	}
+
+	@Test
+	public void cancelStopsDelivery() {
+		Recorder cancelled = new Recorder();
+		Recorder other = new Recorder();
+		publisher.subscribe(cancelled);
+		publisher.subscribe(other);
+		cancelled.subscription.request(Long.MAX_VALUE);
+		other.subscription.request(Long.MAX_VALUE);
+		run();
+		cancelled.subscription.cancel();
+		commit(0, TestElement.of(1, 1));
+		run();
+		assertTrue(cancelled.batches.isEmpty());
+		assertEquals(1, other.batches.size());
+		other.subscription.cancel();
+		// without subscribers, commits don't even mark their slot.
+		commit(0, TestElement.of(1, 2));
+		assertTrue(tasks.isEmpty());
+	}
+
+	@Test
+	public void slowSubscriberDoesntBlockCommits() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(1, () -> TestElement.EMPTY);
+		CountDownLatch delivering = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch delivered = new CountDownLatch(1);
+		Recorder recorder = new Recorder() {
+			@Override
+			public void onNext(List<SlotChange<TestElement>> batch) {
+				super.onNext(batch);
+				delivering.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (batch.get(0).getNewValue().getCount() == 64) {
+					delivered.countDown();
+				}
+			}
+		};
+		holder.changes().subscribe(recorder);
+		recorder.subscription.request(Long.MAX_VALUE);
+		holder.insert(0, TestElement.of(1, 1), false).commit();
+		assertTrue(delivering.await(10, TimeUnit.SECONDS));
+		Thread committer = new Thread(() -> {
+			for (int i = 1; i < 64; i++) {
+				holder.insert(0, TestElement.of(1, 1), false).commit();
+			}
+		});
+		committer.start();
+		// the subscriber is stuck in onNext, but commits go on.
+		committer.join(TimeUnit.SECONDS.toMillis(10));
+		assertFalse(committer.isAlive());
+		release.countDown();
+		// and the latest contents still get published.
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+		assertTrue(recorder.errors.isEmpty());
+	}
+
+	private static class Recorder implements SlotChangePublisher.Subscriber<List<SlotChange<TestElement>>> {
+		final List<List<SlotChange<TestElement>>> batches = new CopyOnWriteArrayList<>();
+		final List<Throwable> errors = new CopyOnWriteArrayList<>();
+		volatile SlotChangePublisher.Subscription subscription;
+
+		@Override
+		public void onSubscribe(SlotChangePublisher.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(List<SlotChange<TestElement>> batch) {
+			batches.add(batch);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			errors.add(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+		}
+	}
+}
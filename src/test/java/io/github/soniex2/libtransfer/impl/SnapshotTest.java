@@ -0,0 +1,154 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.SizedElementSnapshot;
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class SnapshotTest {
+	private static final int MOVERS = 3;
+
+	@Test
+	public void keepsTheContentsFromWhenItWasTaken() {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		holder.insert(0, TestElement.of(1, 10), false).commit();
+		SizedElementSnapshot<TestElement> snapshot = holder.snapshot();
+		holder.extract(0, TestElement.of(1, 4), false).commit();
+		holder.insert(1, TestElement.of(2, 3), false).commit();
+		assertEquals(10, snapshot.get(0).getCount());
+		assertTrue(snapshot.get(1).isEmpty());
+		snapshot.close();
+		assertEquals(10, snapshot.get(0).getCount());
+	}
+
+	@Test
+	public void releasesItselfOnceEverySlotWasRead() {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(3, () -> TestElement.EMPTY);
+		AtomicInteger released = new AtomicInteger();
+		CopyOnWriteSnapshot<TestElement> snapshot = new CopyOnWriteSnapshot<>(cells(holder), s -> released.incrementAndGet());
+		snapshot.preserve(1, TestElement.of(1, 1));
+		// already preserved, so this is ignored.
+		snapshot.preserve(1, TestElement.of(1, 2));
+		assertEquals(1, snapshot.get(1).getCount());
+		snapshot.get(0);
+		assertEquals(0, released.get());
+		snapshot.get(2);
+		assertEquals(1, released.get());
+		snapshot.close();
+		assertEquals(1, released.get());
+	}
+
+	@Test
+	public void closedSnapshotsRefuseUnreadSlots() {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		SizedElementSnapshot<TestElement> snapshot = holder.snapshot();
+		snapshot.get(0);
+		snapshot.close();
+		try {
+			snapshot.get(1);
+			fail();
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	@Test
+	public void staysConsistentWhileElementsMove() throws Exception {
+		int slots = 8;
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(slots, () -> TestElement.EMPTY);
+		for (int slot = 0; slot < slots; slot++) {
+			holder.insert(slot, TestElement.of(1, 32), false).commit();
+		}
+		long total = 32L * slots;
+		AtomicBoolean done = new AtomicBoolean();
+		Thread[] movers = new Thread[MOVERS];
+		for (int t = 0; t < MOVERS; t++) {
+			int seed = t;
+			movers[t] = new Thread(() -> {
+				for (int i = seed; !done.get(); i++) {
+					// move one element at a time, so at most one per mover is ever in flight.
+					Transaction<TestElement> ex = holder.extract(i % slots, TestElement.of(1, 1), false);
+					if (!ex.commit() || ex.get().isEmpty()) {
+						continue;
+					}
+					for (int to = (i * 7 + 3) % slots; ; to = (to + 1) % slots) {
+						Transaction<TestElement> in = holder.insert(to, TestElement.of(1, 1), false);
+						boolean inserted = !in.get().isEmpty();
+						in.commit();
+						if (inserted) {
+							break;
+						}
+					}
+				}
+			});
+			movers[t].start();
+		}
+		try {
+			for (int round = 0; round < 500; round++) {
+				try (SizedElementSnapshot<TestElement> snapshot = holder.snapshot()) {
+					long seen = 0;
+					for (int slot = 0; slot < slots; slot++) {
+						seen += snapshot.get(slot).getCount();
+					}
+					// seeing an insertion without the extraction before it would put us above the total.
+					assertTrue("torn snapshot: " + seen, seen <= total && seen >= total - MOVERS);
+				}
+			}
+		} finally {
+			done.set(true);
+			for (Thread mover : movers) {
+				mover.join();
+			}
+		}
+	}
+
+	@Test
+	public void seesBulkCommitsWhole() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(2, () -> TestElement.EMPTY);
+		holder.insert(0, TestElement.of(1, 32), false).commit();
+		holder.insert(1, TestElement.of(1, 32), false).commit();
+		AtomicBoolean done = new AtomicBoolean();
+		CountDownLatch started = new CountDownLatch(1);
+		Thread mover = new Thread(() -> {
+			started.countDown();
+			while (!done.get()) {
+				// (32, 32) -> (0, 0) in one commit, then back through (32, 0), so slot 1 never holds more than slot 0.
+				holder.extractBulk(new int[]{0, 1}, TestElement.of(1, 64), false).commit();
+				holder.insert(0, TestElement.of(1, 32), false).commit();
+				holder.insert(1, TestElement.of(1, 32), false).commit();
+			}
+		});
+		mover.start();
+		try {
+			assertTrue(started.await(1, TimeUnit.SECONDS));
+			for (int round = 0; round < 2000; round++) {
+				try (SizedElementSnapshot<TestElement> snapshot = holder.snapshot()) {
+					int first = snapshot.get(0).getCount();
+					int second = snapshot.get(1).getCount();
+					assertTrue("torn snapshot: " + first + ", " + second, second <= first);
+				}
+			}
+		} finally {
+			done.set(true);
+			mover.join();
+		}
+	}
+
+	private static AtomicReferenceArray<SizedElementCell<TestElement>> cells(SizedElementHolderImpl<TestElement> holder) {
+		AtomicReferenceArray<SizedElementCell<TestElement>> cells = new AtomicReferenceArray<>(holder.getSlots());
+		for (int slot = 0; slot < cells.length(); slot++) {
+			cells.set(slot, holder.cell(slot));
+		}
+		return cells;
+	}
+}
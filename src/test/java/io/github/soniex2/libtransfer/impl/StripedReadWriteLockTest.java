@@ -0,0 +1,113 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.TestElement;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class StripedReadWriteLockTest {
+	@Test
+	public void writerWaitsForReaders() throws Exception {
+		StripedReadWriteLock lock = new StripedReadWriteLock();
+		CountDownLatch reading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Thread reader = new Thread(() -> {
+			lock.readLock().lock();
+			try {
+				reading.countDown();
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				lock.readLock().unlock();
+			}
+		});
+		reader.start();
+		reading.await();
+		assertFalse(lock.writeLock().tryLock());
+		assertFalse(lock.writeLock().tryLock(10, TimeUnit.MILLISECONDS));
+		release.countDown();
+		reader.join();
+		assertTrue(lock.writeLock().tryLock(1, TimeUnit.SECONDS));
+		lock.writeLock().unlock();
+	}
+
+	@Test
+	public void readersWaitForWriter() throws Exception {
+		StripedReadWriteLock lock = new StripedReadWriteLock();
+		AtomicBoolean read = new AtomicBoolean();
+		lock.writeLock().lock();
+		Thread reader;
+		try {
+			// the writer may read, reentrantly.
+			assertTrue(lock.readLock().tryLock());
+			assertTrue(lock.readLock().tryLock());
+			lock.readLock().unlock();
+			lock.readLock().unlock();
+			reader = new Thread(() -> {
+				lock.readLock().lock();
+				read.set(true);
+				lock.readLock().unlock();
+			});
+			reader.start();
+			reader.join(50);
+			assertFalse(read.get());
+		} finally {
+			lock.writeLock().unlock();
+		}
+		reader.join();
+		assertTrue(read.get());
+	}
+
+	@Test
+	public void readersOnDeadThreadsDontBlockWriters() throws Exception {
+		StripedReadWriteLock lock = new StripedReadWriteLock();
+		for (int i = 0; i < 8; i++) {
+			Thread reader = new Thread(() -> {
+				lock.readLock().lock();
+				lock.readLock().unlock();
+			});
+			reader.start();
+			reader.join();
+		}
+		assertTrue(lock.writeLock().tryLock(1, TimeUnit.SECONDS));
+		lock.writeLock().unlock();
+	}
+
+	@Test
+	public void guardsInvalidation() throws Exception {
+		SizedElementHolderImpl<TestElement> holder = new SizedElementHolderImpl<>(16, () -> TestElement.EMPTY, new StripedReadWriteLock());
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int slot = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 2000; i++) {
+					try {
+						holder.insert(slot, TestElement.of(1, 1), false).commit();
+						holder.extract(slot, TestElement.of(1, 1), false).commit();
+					} catch (IllegalStateException e) {
+						// invalidated by clearAndResize before it could commit.
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (int i = 0; i < 20; i++) {
+			holder.clearAndResize(16);
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		for (int slot = 0; slot < 16; slot++) {
+			// every extraction follows its insertion, so slots never hold more than one.
+			assertTrue(holder.get(slot).getCount() <= 1);
+		}
+	}
+}
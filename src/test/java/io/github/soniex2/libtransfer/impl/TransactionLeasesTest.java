@@ -0,0 +1,112 @@
+package io.github.soniex2.libtransfer.impl;
+
+import io.github.soniex2.libtransfer.TestElement;
+import io.github.soniex2.libtransfer.Transaction;
+import io.github.soniex2.libtransfer.TransactionStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author soniex2
+ */
+public class TransactionLeasesTest {
+	private final List<TransactionLeases.Expiry> expired = new CopyOnWriteArrayList<>();
+	private TransactionLeases leases;
+	private SizedElementHolderImpl<TestElement> holder;
+
+	@Before
+	public void setUp() {
+		leases = new TransactionLeases(expired::add, 5, 8);
+		holder = new SizedElementHolderImpl<>(4, () -> TestElement.EMPTY);
+		for (int i = 0; i < 4; i++) {
+			holder.insert(i, TestElement.of(0, 32), false).commit();
+		}
+		holder.leaseTransactions(leases, 20);
+	}
+
+	@After
+	public void tearDown() {
+		leases.close();
+	}
+
+	private void awaitExpiries(int n) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (expired.size() < n && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(n, expired.size());
+	}
+
+	@Test
+	public void abandonedReservationIsReclaimed() throws InterruptedException {
+		holder.insert(0, TestElement.of(0, 32), false);
+		assertEquals(0, holder.capacityFor(0, TestElement.of(0, 1)));
+		awaitExpiries(1);
+		assertEquals(32, holder.capacityFor(0, TestElement.of(0, 1)));
+		assertEquals(32, holder.get(0).getCount());
+		assertEquals(32, expired.get(0).getElement().getCount());
+	}
+
+	@Test
+	public void finishedTransactionsDontExpire() throws InterruptedException {
+		holder.extract(0, TestElement.of(0, 2), true).commit();
+		holder.insert(1, TestElement.of(0, 2), false).revert();
+		Thread.sleep(100);
+		assertTrue(expired.isEmpty());
+		assertEquals(30, holder.get(0).getCount());
+		assertEquals(32, holder.get(1).getCount());
+	}
+
+	@Test
+	public void expiredTransactionIsInvalidated() throws InterruptedException {
+		Transaction<TestElement> transaction = holder.extract(0, TestElement.of(0, 5), false);
+		awaitExpiries(1);
+		assertEquals(TransactionStatus.INVALIDATED, transaction.getStatus());
+		try {
+			transaction.commit();
+			fail("committed an expired transaction");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(32, holder.get(0).getCount());
+	}
+
+	@Test
+	public void abandonedStrongTransactionStopsBlockingClear() throws Exception {
+		holder.extract(0, TestElement.of(0, 1), true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> clear = executor.submit(() -> holder.clearAndResize(4));
+			clear.get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdownNow();
+		}
+		// the expiry is reported after the revert which let the clear through.
+		awaitExpiries(1);
+	}
+
+	@Test
+	public void samplingCapturesCreationStacks() throws InterruptedException {
+		leases.setSampling(2);
+		for (int i = 0; i < 4; i++) {
+			holder.extract(i, TestElement.of(0, 1), false);
+		}
+		awaitExpiries(4);
+		int sampled = 0;
+		for (TransactionLeases.Expiry expiry : expired) {
+			if (expiry.getCreationStack() != null) {
+				sampled++;
+			}
+		}
+		assertEquals(2, sampled);
+	}
+}